@@ -1,22 +1,45 @@
 package com.palliser.nztides;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.palliser.nztides.core.ConstituentDatabase;
+import com.palliser.nztides.core.PageSnapshot;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideMetrics;
+import com.palliser.nztides.core.TideRepository;
+import com.palliser.nztides.core.TideCursor;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideTableCache;
+import com.palliser.nztides.core.TideText;
+import com.palliser.nztides.core.ZoneTable;
 
 import android.app.Activity;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Typeface;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.SubMenu;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
@@ -24,10 +47,39 @@ public class NZTides extends Activity {
 	
     public static final int MENU_ITEM_CHOOSE_PORT = Menu.FIRST;
     public static final int MENU_ITEM_ABOUT = Menu.FIRST+1;
+    public static final int MENU_ITEM_METRICS = Menu.FIRST+2;//debug builds only
     public static final String PREFS_NAME = "NZTidesPrefsFile";//file to store prefs
+    public static final int TABLE_CACHE_BYTES = 256*1024;//room for a window of every port
+    //only the weeks around now are decoded, from the start of this week less a day
+    public static final int WINDOW_STEP = 7*86400;
+    public static final int WINDOW_SPAN = 50*86400;//the week and then comfortably more than the listed tides
+    public static final int GRAPH_HEIGHT_DP = 160;
+    public static final String SNAPSHOT_NAME = "page.snapshot";//in the files dir, see PageSnapshot
+
+    //decoded tables outlive the activity so rotating or coming back to a port is free
+    private static final TideTableCache tables = new TideTableCache(TABLE_CACHE_BYTES);
 
     
     private String currentport;
+    private TideRepository.Source tidesource;//opens the database for the process wide repository
+    private TideRepository.Snapshot data;//worker thread, the data calc_outstring is working from
+    private ConstituentDatabase constituentdb;
+    private TideText renderer;//only used on the worker thread
+    private TideCursor cursor;//worker thread too, follows the current port's table from minute to minute
+    private TextView tidetext;//the tide page, null while something else is showing
+    private TideGraphView tidegraph;//the curve above it
+    private TideTable graphtable;//worker thread, the table calc_outstring drew from, null when predicting
+    private ZoneTable graphzone;
+    private int graphlasttide;
+    private File snapshotfile;
+    private String dataversion;//the tide data's version, snapshots of any other are ignored
+    private volatile PageSnapshot snapshot;//the one saved or shown last, so unchanged pages aren't saved again
+
+    //tide data is read and formatted on this thread rather than the UI thread
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler uihandler = new Handler(Looper.getMainLooper());
+    private Future<?> pending;
+    private volatile int generation;//bumped for each request so stale results are dropped
    
 
     final private String[] portdisplaynames = {"Akaroa", "Anakakata Bay", "Anawhata", "Auckland", "Ben Gunn Wharf", "Bluff", "Castlepoint", "Charleston", "Dargaville", "Deep Cove", "Dog Island", "Dunedin", "Elaine Bay", "Elie Bay", "Fishing Rock - Raoul Island", "Flour Cask Bay", "Fresh Water Basin", "Gisborne", "Green Island", "Halfmoon Bay - Oban", "Havelock", "Helensville", "Huruhi Harbour", "Jackson Bay", "Kaikōura", "Kaingaroa - Chatham Island", "Kaiteriteri", "Kaituna River Entrance", "Kawhia", "Korotiti Bay", "Leigh", "Long Island", "Lottin Point - Wakatiri", "Lyttelton", "Mana Marina", "Man o'War Bay", "Manu Bay", "Māpua", "Marsden Point", "Matiatia Bay", "Motuara Island", "Moturiki Island", "Napier", "Nelson", "New Brighton Pier", "North Cape - Otou", "Oamaru", "Ōkukari Bay", "Omaha Bridge", "Ōmokoroa", "Onehunga", "Opononi", "Ōpōtiki Wharf", "Opua", "Owenga - Chatham Island", "Paratutae Island", "Picton", "Port Chalmers", "Port Ōhope Wharf", "Port Taranaki", "Pouto Point", "Raglan", "Rangatira Point", "Rangitaiki River Entrance", "Richmond Bay", "Riverton - Aparima", "Scott Base", "Spit Wharf", "Sumner Head", "Tamaki River", "Tarakohe", "Tauranga", "Te Weka Bay", "Thames", "Timaru", "Town Basin", "Waihopai River Entrance", "Waitangi - Chatham Island", "Weiti River Entrance", "Welcombe Bay", "Wellington", "Westport", "Whakatāne", "Whanganui River Entrance", "Whangārei", "Whangaroa", "Whitianga", "Wilson Bay"};
@@ -42,175 +94,103 @@ public class NZTides extends Activity {
 	  return b1 << 24 | b2 << 16 | b3 << 8 | b4 << 0;
 	}
 
-	public String calc_outstring(String port){
-	       
-		AssetManager am = getAssets();
-		StringBuffer outstring =  new StringBuffer("");
-	        
-		int num_rows=8;
-	    int num_cols=34;
-		int t = 0,told;
-		float h=0;
-		float hold;
-		Date now = new Date();
-		int nowsecs = (int)(now.getTime()/1000);
-		int lasttide;
-		char [][] graph = new char[num_rows][num_cols+1];
-
-
-		
-		
-	    try {
-
-			DecimalFormat nformat1 = new DecimalFormat(" 0.00;-0.00");
-			DecimalFormat nformat2 = new DecimalFormat("0.00");
-			DecimalFormat nformat3 = new DecimalFormat("00");
-			DecimalFormat nformat4 = new DecimalFormat(" 0.0;-0.0");
-			//SimpleDateFormat dformat = new SimpleDateFormat(
-			//    	"HH:mm E dd-MM-yyyy zzz");
-			SimpleDateFormat dformat = new SimpleDateFormat(
-					"HH:mm E dd/MM/yy zzz");
-
-	    	DataInputStream tidedat = new DataInputStream(am.open(port+".tdat",1));
-
-
-			String stationname_tofu = tidedat.readLine(); //stationname with unicode stuff ups
-	       // byte[] stationnamebytes = stationname_tofu.getBytes(Charset.defaultCharset());
-			//String stationname = new String(stationnamebytes, "UTF-8");
-	    	//read timestamp for last tide in datafile
-	    	lasttide = swap(tidedat.readInt());
-	    	 
-	    	//nrecs = swap(tidedat.readInt()); //Number of records in datafile
-	        tidedat.readInt(); //Read number of records in datafile
-	       
-	    	told = swap(tidedat.readInt());
-	        hold = (float) (tidedat.readByte())/(float)(10.0);
-
-			if(told>nowsecs){
-				outstring.append("The first tide in this datafile doesn't occur until ");
-				outstring.append(dformat.format(new Date(1000*(long)told)));
-				outstring.append(". The app should start working properly about then.");
-			} else {
-
-				//look thru tidedatfile for current time
-				for (; ; ) {
-					t = swap(tidedat.readInt());
-					h = (float) (tidedat.readByte()) / (float) (10.0);
-					if (t > nowsecs) {
-						break;
-					}
-					told = t;
-					hold = h;
+	/**
+	 * Maps the tide database from assets, the first time anything in the process needs
+	 * it. Static so the repository doesn't keep hold of an activity.
+	 */
+	private static TideRepository.Source databaseSource(final AssetManager assets) {
+		return new TideRepository.Source() {
+			public TideDatabase open() throws IOException {
+				long started = TideMetrics.OPEN.start();
+				AssetFileDescriptor afd = assets.openFd(TideDatabase.ASSET_NAME);
+				try {
+					//the mapping stays valid after the descriptor is closed
+					FileInputStream in = afd.createInputStream();
+					return TideDatabase.map(in.getChannel(), afd.getStartOffset(), afd.getLength());
+				} finally {
+					afd.close();
+					TideMetrics.OPEN.stop(started);
 				}
+			}
+		};
+	}
 
+	/** Map the harmonic constituents the first time tides have to be predicted */
+	private ConstituentDatabase constituents() throws IOException {
+		if (constituentdb == null) {
+			long started = TideMetrics.OPEN.start();
+			AssetFileDescriptor afd = getAssets().openFd(ConstituentDatabase.ASSET_NAME);
+			try {
+				FileInputStream in = afd.createInputStream();
+				constituentdb = ConstituentDatabase.map(in.getChannel(), afd.getStartOffset(), afd.getLength());
+			} finally {
+				afd.close();
+				TideMetrics.OPEN.stop(started);
+			}
+		}
+		return constituentdb;
+	}
 
-				//parameters of cosine wave used to interpolate between tides
-				//We assume that the tides vaires cosinusoidally
-				//between the last tide and the next one
-				//see NZ Nautical almanac for more details,
-				double omega = 2 * Math.PI / ((t - told) * 2);
-				double amp = (hold - h) / 2;
-				double mn = (h + hold) / 2;
-				double x, phase;
-
-				// make ascii art plot
-
-				for (int k = 0; k < num_rows; k++) {
-					for (int j = 0; j < num_cols; j++) {
-						graph[k][j] = ' ';
-					}
-					graph[k][num_cols] = '\n';
-				}
-
-				for (int k = 0; k < num_cols; k++) {
-					x = (1.0 + (hold > h ? -1 : 1) * Math.sin(k * 2 * Math.PI / (num_cols - 1))) / 2.0;
-					x = ((num_rows - 1) * x + 0.5);
-					graph[(int) x][k] = '*';
-					//graph[k%num_rows][k]='*';
-				}
-
-				phase = omega * (nowsecs - told);
-				x = (phase + Math.PI / 2) / (2.0 * Math.PI);
-				x = ((num_cols - 1) * x + 0.5);
-				for (int j = 0; j < num_rows; j++) {
-					graph[j][(int) x] = '|';
-				}
-
-
-				double currentht = amp * Math.cos(omega * (nowsecs - told)) + mn;
-				double riserate = -amp * omega * Math.sin(omega * (nowsecs - told)) * 60 * 60;
-
-
-				//Start populating outstring
-				outstring.append("[" + port + "] " + nformat4.format(currentht) + "m");
-				//display up arrow or down arrow depending on weather tide is rising or falling
-				if (hold < h)
-					outstring.append(" \u2191");//up arrow
-				else
-					outstring.append(" \u2193");//down arrow
-
-				outstring.append(nformat2.format(Math.abs(riserate)) + "m/hr\n");
-				outstring.append("---------------\n");
-
-				int time_to_previous = (nowsecs - told);
-				int time_to_next = (t - nowsecs);
-				boolean hightidenext = (h > hold);
-
-				if (time_to_previous < time_to_next) {
-					if (hightidenext) {
-						outstring.append("Low tide (" + hold + "m) " + (int) (time_to_previous / 3600) +
-								"h" + nformat3.format((int) (time_to_previous / 60) % 60) + "m ago\n");
-					} else {
-						outstring.append("High tide (" + hold + "m) " + (int) (time_to_previous / 3600) +
-								"h" + nformat3.format((int) (time_to_previous / 60) % 60) + "m ago\n");
-					}
-				} else {
-					if (hightidenext) {
-						outstring.append("High tide (" + h + "m) in " + (int) (time_to_next / 3600) +
-								"h" + nformat3.format((int) (time_to_next / 60) % 60) + "m\n");
-					} else {
-						outstring.append("Low tide (" + h + "m) in " + (int) (time_to_next / 3600) +
-								"h" + nformat3.format((int) (time_to_next / 60) % 60) + "m\n");
-					}
-
-				}
-				//outstring.append("---------------\n");
-				//int num_minutes=(int)((nowsecs-told)/(60));
-				//outstring.append("Last tide " + hold + "m,    "+num_minutes/60  + "h" +nformat3.format(num_minutes%60) +"m ago\n");
-				//num_minutes=(int)((t -nowsecs)/(60));
-				//outstring.append("Next tide " + h + "m, in " +num_minutes/60  + "h" +nformat3.format(num_minutes%60) +"m\n");
-				//outstring.append("---------------\n");
-				outstring.append("\n");
-
-				for (int k = 0; k < num_rows; k++) {
-					for (int j = 0; j < num_cols + 1; j++) {
-						outstring.append(graph[k][j]);
-					}
-				}
-
-				//outstring.append("---------------\n");
-				outstring.append("\n");
+	/** Loads "generation/port@start", the tides of port from start for WINDOW_SPAN */
+	private final TideTableCache.Loader tableloader = new TideTableCache.Loader() {
+		public TideTable load(String key) throws IOException {
+			int at = key.lastIndexOf('@');
+			String port = key.substring(key.indexOf('/') + 1, at);
+			int start = Integer.parseInt(key.substring(at + 1));
+			int p = data.database().portIndex(port);
+			if (p < 0)
+				throw new IOException("no tide data for " + port);
+			return data.database().table(p, start, start + WINDOW_SPAN);
+		}
+	};
 
+	public String calc_outstring(String port){
 
-				hightidenext = !hightidenext;
-				outstring.append(nformat1.format(hold) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) told)) + '\n');
-				hightidenext = !hightidenext;
-				outstring.append(nformat1.format(h) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) t)) + '\n');
+		int nowsecs = (int)(System.currentTimeMillis()/1000);
 
-				for (int k = 0; k < 35 * 4; k++) {
-					hightidenext = !hightidenext;
-					t = swap(tidedat.readInt());
-					h = (float) (tidedat.readByte()) / (float) (10.0);
-					outstring.append(nformat1.format(h) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) t)) + '\n');
-				}
-				outstring.append("The last tide in this datafile occurs at:\n");
-				outstring.append(dformat.format(new Date(1000 * (long) lasttide)));
-			}
-	            
+	    try {
+	    	//the same data throughout, even if new data is installed meanwhile
+	    	data = TideRepository.shared().snapshot(tidesource);
+	    	TideDatabase db = data.database();
+	    	//a new window each week or new data, the old one drops out of the cache in time
+	    	int windowstart = nowsecs / WINDOW_STEP * WINDOW_STEP - 86400;
+	    	TideTable table = tables.get(data.generation() + "/" + port + "@" + windowstart, tableloader);
+
+	    	//tides are shown in NZ time from the database's own zone table, whatever the
+	    	//device's zone; the renderer caches locale names, so remake it if that changes
+	    	ZoneTable zone = db.zone();
+	    	if (renderer == null || !renderer.isFor(zone, Locale.getDefault()))
+	    		renderer = new TideText(zone, Locale.getDefault());
+	    	graphzone = zone;
+	    	if (table.covers(nowsecs)) {
+	    		if (cursor == null || cursor.table() != table)
+	    			cursor = new TideCursor(table);
+	    		cursor.moveTo(nowsecs);
+	    		try {
+	    			//the graph view draws the curve from the table, so leave the ascii one out
+	    			renderer.setAsciiGraph(false);
+	    			//the table is only a window, the footer gives the end of the whole file
+	    			graphlasttide = db.lastTime(db.portIndex(port));
+	    			renderer.setLastTide(graphlasttide);
+	    			String page = renderer.render(port, cursor).toString();
+	    			graphtable = table;
+	    			return page;
+	    		} catch (EOFException e) {
+	    			//table runs out before the list does, predict instead
+	    		}
+	    	}
+	    	graphtable = null;
+	    	renderer.setAsciiGraph(true);
+	    	ConstituentDatabase cdb = constituents();
+	    	int p = cdb.portIndex(port);
+	    	if (p < 0)
+	    		return "The tide table for " + port + " has run out, and its tides can't be predicted well enough from harmonic constituents to show them instead. Try looking for an update.";
+	    	renderer.setPredictionError(cdb.minutesOut(p), cdb.centimetresOut(p));
+	    	return renderer.renderPredicted(port, cdb.model(p), nowsecs).toString();
 	        }catch (IOException e) {
-	        	outstring.append("Problem reading tide data\n\n Try selecting the port again, some times the ports available change with and upgrade. If this doesn't work it is either because the tide data is out of date or you've found some bug, try looking for an update.");
+	        	graphtable = null;
+	        	return "Problem reading tide data\n\n Try selecting the port again, some times the ports available change with and upgrade. If this doesn't work it is either because the tide data is out of date or you've found some bug, try looking for an update.";
 	        }
-	        return outstring.toString();
 	}
 	
     /** Called when the activity is first created. */
@@ -221,6 +201,15 @@ public class NZTides extends Activity {
         //restore current port from settings file
         SharedPreferences settings = getSharedPreferences(PREFS_NAME, 0);
         currentport = settings.getString("CurrentPort","Auckland" );
+        tidesource = databaseSource(getApplicationContext().getAssets());
+
+        //timings are only collected in debug builds, where they can be seen from the menu
+        TideMetrics.setEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+
+        //something to look at before the database is opened, replaced by the refresh in onResume
+        snapshotfile = new File(getFilesDir(), SNAPSHOT_NAME);
+        dataversion = dataVersion();
+        showSnapshot();
         
     //    setContentView(R.layout.main);
     }
@@ -234,6 +223,8 @@ public class NZTides extends Activity {
             portMenu.add(0,Menu.FIRST+10+k,0,portdisplaynames[k]);
         
         menu.add(0, MENU_ITEM_ABOUT, 0,"About" );
+        if (TideMetrics.isEnabled())
+            menu.add(0, MENU_ITEM_METRICS, 0,"Metrics" );
                
         // Generate any additional actions that can be performed on the
         // overall list.  In a normal install, there are no additional
@@ -249,12 +240,14 @@ public class NZTides extends Activity {
     
         if(id>=Menu.FIRST+10 && id<Menu.FIRST+10+portdisplaynames.length){
             currentport = portdisplaynames[id-11];
-            this.onResume();
+            refresh();
             return true;
         }
 	        
     	switch (id) {
     	  case MENU_ITEM_ABOUT:
+    		generation++;//don't let a late tide page replace the about page
+    		tidetext = null;
     		TextView tv = new TextView(this);
     		//tv.setTypeface(Typeface.MONOSPACE);
     		tv.setText(R.string.AboutString);//+now.format2445());
@@ -263,26 +256,184 @@ public class NZTides extends Activity {
     		setContentView(sv);   
     	    //quit();
     	    return true;
+    	  case MENU_ITEM_METRICS:
+    		generation++;
+    		tidetext = null;
+    		TextView mv = new TextView(this);
+    		mv.setTypeface(Typeface.MONOSPACE);
+    		mv.setText(TideMetrics.toJson().replace("},", "},\n") + "\n\ntable cache " + tables);
+    		ScrollView msv = new ScrollView(this);
+    		msv.addView(mv);
+    		setContentView(msv);
+    		return true;
     	  default:
     	    return super.onOptionsItemSelected(item);
     	  }
     	}
     
-    @Override
-    protected void onResume(){
-        String outstring = calc_outstring(currentport);
-        TextView tv = new TextView(this);
-        tv.setTypeface(Typeface.MONOSPACE);
-        tv.setText(outstring);//+now.format2445());
-        ScrollView sv = new ScrollView(this);
-        sv.addView(tv);
-        setContentView(sv,new ViewGroup.LayoutParams(
+    /**
+     * The version of the tide data, which only changes when the app is updated as the
+     * data is in its assets. lastUpdateTime is only there from API 9, before that the
+     * version code has to do.
+     */
+    private String dataVersion(){
+        try {
+            PackageInfo info = getPackageManager().getPackageInfo(getPackageName(), 0);
+            if (Build.VERSION.SDK_INT >= 9)
+                return TideDatabase.VERSION + "/" + info.lastUpdateTime;
+            return TideDatabase.VERSION + "/v" + info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return TideDatabase.VERSION + "/";//can't happen for our own package
+        }
+    }
+
+    /**
+     * Show the current port's page from the snapshot saved last time, if it's from this
+     * version of the data and still covers now. Only a few kilobytes are read and one
+     * page rendered, so it's done here on the UI thread to be there for the first frame.
+     */
+    private void showSnapshot(){
+        int nowsecs = (int)(System.currentTimeMillis()/1000);
+        PageSnapshot saved;
+        try {
+            saved = PageSnapshot.load(snapshotfile);
+        } catch (IOException e) {
+            snapshotfile.delete();//damaged, don't trip over it on every launch
+            return;
+        } catch (RuntimeException e) {
+            snapshotfile.delete();
+            return;
+        }
+        if (saved == null || !saved.isCurrent(dataversion, currentport, nowsecs))
+            return;
+        try {
+            TideText text = new TideText(saved.zone(), Locale.getDefault());
+            text.setAsciiGraph(false);
+            text.setLastTide(saved.lastTide());
+            TideCursor at = new TideCursor(saved.table());
+            at.moveTo(nowsecs);
+            show(text.render(saved.port(), at).toString(), saved.table(), saved.zone(), nowsecs);
+            snapshot = saved;
+        } catch (EOFException e) {
+            //its tides run out before the page does, wait for the real page
+        }
+    }
+
+    /** Worker thread: save the page just made from table, unless the snapshot already holds it */
+    private void saveSnapshot(String port, TideTable table, ZoneTable zone, int lasttide){
+        PageSnapshot last = snapshot;
+        if (last != null && last.sameAs(dataversion, port, table))
+            return;
+        PageSnapshot page = new PageSnapshot(dataversion, port, lasttide, zone, table);
+        try {
+            page.save(snapshotfile);
+            snapshot = page;
+        } catch (IOException e) {
+            //the next cold start just has to wait for the real page
+        }
+    }
+
+    /**
+     * Work out the page for the current port on the worker thread and show it when done.
+     * Any request still waiting is cancelled and the result of one already running is
+     * dropped, so flicking quickly through ports only shows the last one.
+     */
+    private void refresh(){
+        final String port = currentport;
+        final int gen = ++generation;
+        if (pending != null)
+            pending.cancel(false);
+        pending = worker.submit(new Runnable() {
+            public void run() {
+                if (gen != generation)
+                    return;
+                final String outstring = calc_outstring(port);
+                final TideTable table = graphtable;
+                final ZoneTable zone = graphzone;
+                final int nowsecs = (int)(System.currentTimeMillis()/1000);
+                uihandler.post(new Runnable() {
+                    public void run() {
+                        if (gen == generation)
+                            show(outstring, table, zone, nowsecs);
+                    }
+                });
+                //once the page is on its way, and only when the port or window has changed
+                if (table != null)
+                    saveSnapshot(port, table, zone, graphlasttide);
+            }
+        });
+    }
+
+    private void show(String outstring, TideTable table, ZoneTable zone, int nowsecs){
+        long started = TideMetrics.INFLATE.start();
+        //the page is made once and its text replaced after that, which keeps the scroll position
+        if (tidetext == null) {
+            tidegraph = new TideGraphView(this);
+            tidetext = new TextView(this);
+            tidetext.setTypeface(Typeface.MONOSPACE);
+            LinearLayout page = new LinearLayout(this);
+            page.setOrientation(LinearLayout.VERTICAL);
+            page.addView(tidegraph, new ViewGroup.LayoutParams(
+				ViewGroup.LayoutParams.MATCH_PARENT,
+				(int)(GRAPH_HEIGHT_DP*getResources().getDisplayMetrics().density)
+			));
+            page.addView(tidetext, new ViewGroup.LayoutParams(
+				ViewGroup.LayoutParams.MATCH_PARENT,
+				ViewGroup.LayoutParams.WRAP_CONTENT
+			));
+            ScrollView sv = new ScrollView(this);
+            sv.addView(page);
+            setContentView(sv,new ViewGroup.LayoutParams(
 				ViewGroup.LayoutParams.MATCH_PARENT,
 				ViewGroup.LayoutParams.MATCH_PARENT
-		));
+			));
+        }
+        tidetext.setText(outstring);//+now.format2445());
+        //the curve is only rebuilt when the port or its window changes
+        tidegraph.show(table, zone, nowsecs);
+        tidegraph.setVisibility(table != null ? View.VISIBLE : View.GONE);
+        TideMetrics.INFLATE.stop(started);
+    }
+
+    /**
+     * Updates the tide page at the start of every minute while the activity is in front.
+     * The cursor only moves on a minute, so each update just recomputes the height, rate
+     * and graph and reuses the list of tides unless a tide has passed.
+     */
+    private final Runnable ticker = new Runnable() {
+        public void run() {
+            if (tidetext != null)
+                refresh();
+            scheduleTick();
+        }
+    };
+
+    private void scheduleTick(){
+        long now = System.currentTimeMillis();
+        uihandler.postDelayed(ticker, 60000 - now % 60000);
+    }
+
+    @Override
+    protected void onResume(){
+        refresh();
+        scheduleTick();
     	super.onResume();
     }
 
+    @Override
+    protected void onPause(){
+        uihandler.removeCallbacks(ticker);
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy(){
+        generation++;
+        if (pending != null)
+            pending.cancel(false);
+        super.onDestroy();
+    }
+
     @Override
     protected void onStop(){
        super.onStop();
@@ -293,8 +444,11 @@ public class NZTides extends Activity {
       SharedPreferences.Editor editor = settings.edit();
       editor.putString("CurrentPort", currentport);
 
-      // Don't forget to commit your edits!!!
-      editor.commit();
+      // apply (API 9 on) writes them out in the background rather than holding up the UI thread here
+      if (Build.VERSION.SDK_INT >= 9)
+          editor.apply();
+      else
+          editor.commit();
     }
 
 
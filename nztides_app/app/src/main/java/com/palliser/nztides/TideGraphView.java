@@ -0,0 +1,200 @@
+package com.palliser.nztides;
+
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.ZoneTable;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.view.View;
+
+/**
+ * Draws the tide curve around now from a port's tide table, with a line at the
+ * current time and faint lines at local midnight.
+ *
+ * The curve is built into a Path once for each table, window and size, the window
+ * starting on the hour WINDOW_LEAD or so before now and only moving on when the hour
+ * does. The last few are kept, so moving the time on within the hour or going back
+ * to a port just looked at redraws from a cached Path rather than sampling the
+ * table again.
+ */
+public class TideGraphView extends View {
+
+	/** The window starts about this long before now */
+	static final int WINDOW_LEAD = 3 * 3600;
+	/** and is this long, a day and a bit so two of each tide are in view */
+	static final int WINDOW_SPAN = 27 * 3600;
+	/** Pixels between curve points */
+	private static final int POINT_SPACING = 2;
+	private static final int MAX_MIDNIGHTS = 4;
+	/** Curves kept, enough for flicking between a few ports */
+	private static final int MAX_CURVES = 4;
+
+	private final float density;
+	private final Paint curvepaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Paint nowpaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Paint gridpaint = new Paint();
+
+	private TideTable table;
+	private ZoneTable zone;
+	private int nowsecs;
+	private int windowstart = Integer.MIN_VALUE;
+
+	//the curves built, most recently used first
+	private final Curve[] curves = new Curve[MAX_CURVES];
+	private int numcurves;
+	private float[] samples = new float[0];
+
+	/** A curve and the midnights across it, and what they were built for */
+	private static final class Curve {
+		final Path path = new Path();
+		final float[] midnights = new float[MAX_MIDNIGHTS];
+		int nummidnights;
+		TideTable table;
+		ZoneTable zone;
+		int windowstart;
+		int width, height;
+
+		boolean isFor(TideTable table, ZoneTable zone, int windowstart, int width, int height) {
+			return this.table == table && this.zone == zone && this.windowstart == windowstart
+					&& this.width == width && this.height == height;
+		}
+	}
+
+	public TideGraphView(Context context) {
+		super(context);
+		density = context.getResources().getDisplayMetrics().density;
+		curvepaint.setStyle(Paint.Style.STROKE);
+		curvepaint.setStrokeWidth(2 * density);
+		curvepaint.setColor(0xff3a7bd5);
+		nowpaint.setStyle(Paint.Style.STROKE);
+		nowpaint.setStrokeWidth(2 * density);
+		nowpaint.setColor(0xffd53a3a);
+		gridpaint.setStrokeWidth(1);
+		gridpaint.setColor(0xff888888);
+	}
+
+	/**
+	 * Show table at nowsecs, with midnights from zone. A null table clears the graph,
+	 * eg while the tides are being predicted rather than read from a table.
+	 */
+	public void show(TideTable table, ZoneTable zone, int nowsecs) {
+		if (table == this.table && zone == this.zone && nowsecs == this.nowsecs)
+			return;
+		this.table = table;
+		this.zone = zone;
+		setNow(nowsecs);
+	}
+
+	/**
+	 * Move the time line to nowsecs. The whole view is redrawn, as with hardware
+	 * acceleration it is anyway, but from the cached curve.
+	 */
+	public void setNow(int nowsecs) {
+		windowstart = (nowsecs - WINDOW_LEAD) / 3600 * 3600;
+		this.nowsecs = nowsecs;
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		if (table == null || getWidth() == 0)
+			return;
+		Curve curve = curve();
+		for (int k = 0; k < curve.nummidnights; k++)
+			canvas.drawLine(curve.midnights[k], 0, curve.midnights[k], getHeight(), gridpaint);
+		canvas.drawPath(curve.path, curvepaint);
+		float x = x(nowsecs);
+		canvas.drawLine(x, 0, x, getHeight(), nowpaint);
+	}
+
+	/** The curve for the current table, window and size, built if it isn't kept */
+	private Curve curve() {
+		int w = getWidth();
+		int h = getHeight();
+		Curve curve = null;
+		int k = 0;
+		for (; k < numcurves; k++) {
+			if (curves[k].isFor(table, zone, windowstart, w, h)) {
+				curve = curves[k];
+				break;
+			}
+		}
+		if (curve == null) {
+			//reuse the least recently used one once they are all taken
+			if (numcurves < MAX_CURVES)
+				curves[numcurves++] = new Curve();
+			k = numcurves - 1;
+			curve = curves[k];
+			build(curve, w, h);
+		}
+		//move it to the front
+		System.arraycopy(curves, 0, curves, 1, k);
+		curves[0] = curve;
+		return curve;
+	}
+
+	/** Sample the window into the curve's path, one point every POINT_SPACING pixels */
+	private void build(Curve c, int w, int h) {
+		c.table = table;
+		c.zone = zone;
+		c.windowstart = windowstart;
+		c.width = w;
+		c.height = h;
+		Path curve = c.path;
+		curve.rewind();
+		c.nummidnights = 0;
+		int n = w / POINT_SPACING + 1;
+		if (n < 2)
+			return;//too narrow to draw anything
+		if (samples.length < n)
+			samples = new float[n];
+		int step = Math.max(1, WINDOW_SPAN / (n - 1));
+		table.sample(windowstart, step, samples, 0, n);
+
+		float lo = Float.MAX_VALUE;
+		float hi = -Float.MAX_VALUE;
+		for (int k = 0; k < n; k++) {
+			if (samples[k] == samples[k]) {
+				lo = Math.min(lo, samples[k]);
+				hi = Math.max(hi, samples[k]);
+			}
+		}
+		if (lo <= hi) {
+			//leave a little room above and below the curve
+			float margin = Math.max(0.1f, (hi - lo) * 0.1f);
+			lo -= margin;
+			hi += margin;
+			boolean drawing = false;
+			for (int k = 0; k < n; k++) {
+				if (samples[k] != samples[k]) {
+					drawing = false;
+					continue;
+				}
+				float x = (float) k * step * w / WINDOW_SPAN;
+				float y = (hi - samples[k]) / (hi - lo) * h;
+				if (drawing) {
+					curve.lineTo(x, y);
+				} else {
+					curve.moveTo(x, y);
+					drawing = true;
+				}
+			}
+		}
+
+		if (zone != null) {
+			for (int day = zone.localDay(windowstart) + 1; c.nummidnights < MAX_MIDNIGHTS; day++) {
+				//the offset at midnight, daylight saving never changes then
+				int midnight = day * 86400 - zone.offset(day * 86400 - zone.rawOffset());
+				if (midnight >= windowstart + WINDOW_SPAN)
+					break;
+				c.midnights[c.nummidnights++] = x(midnight);
+			}
+		}
+	}
+
+	private float x(int secs) {
+		return (float) (secs - windowstart) * getWidth() / WINDOW_SPAN;
+	}
+}
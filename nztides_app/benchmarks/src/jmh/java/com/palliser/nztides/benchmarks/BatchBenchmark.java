@@ -0,0 +1,80 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.PortBatch;
+import com.palliser.nztides.core.PortStates;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideText;
+
+/**
+ * The state of every port at once: the batch query in parallel and on one thread,
+ * the first query including decoding every table, and for comparison rendering
+ * every port's page one at a time the way the app shows a single port.
+ */
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+    private TideDatabase db;
+    private PortBatch batch;
+    private PortStates states;
+    private TideTable[] tables;
+    private TideText text;
+    private int now;
+    private int step;
+
+    @Setup
+    public void setup() throws IOException {
+        db = Fixtures.database();
+        batch = new PortBatch(db);
+        states = batch.newStates();
+        tables = new TideTable[db.numPorts()];
+        for (int p = 0; p < tables.length; p++)
+            tables[p] = db.table(p);
+        text = new TideText();
+        now = Fixtures.timeAt(db.table("Auckland"), 0.5);
+        batch.evaluate(now, states);
+    }
+
+    /** a different time each call so nothing is carried over */
+    private int nextTime() {
+        step = (step + 1) & 1023;
+        return now + 67 * step;
+    }
+
+    @Benchmark
+    public PortStates evaluateParallel() {
+        batch.evaluate(nextTime(), states);
+        return states;
+    }
+
+    @Benchmark
+    public PortStates evaluateSequential() {
+        batch.evaluate(nextTime(), states, 0, batch.numPorts());
+        return states;
+    }
+
+    @Benchmark
+    public PortStates evaluateCold() {
+        PortBatch cold = new PortBatch(db);
+        PortStates out = cold.newStates();
+        cold.evaluate(nextTime(), out);
+        return out;
+    }
+
+    @Benchmark
+    public int renderEveryPort() throws EOFException {
+        int t = nextTime();
+        int chars = 0;
+        for (int p = 0; p < tables.length; p++)
+            chars += text.render(db.portName(p), tables[p], t).length();
+        return chars;
+    }
+}
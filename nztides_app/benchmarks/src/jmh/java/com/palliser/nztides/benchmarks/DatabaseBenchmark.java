@@ -0,0 +1,49 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Opening the packed tide database and decoding a port's table from it, all of it
+ * or just the weeks around a time as the app does.
+ */
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+
+    @Param({"Auckland", "Wellington", "Scott Base"})
+    public String port;
+
+    private TideDatabase db;
+    private int portindex;
+    private int now;
+
+    @Setup
+    public void setup() throws IOException {
+        db = Fixtures.database();
+        portindex = db.portIndex(port);
+        now = Fixtures.timeAt(db.table(portindex), 0.5);
+    }
+
+    @Benchmark
+    public TideDatabase openDatabase() throws IOException {
+        return Fixtures.database();
+    }
+
+    @Benchmark
+    public TideTable decodePort() {
+        return db.table(portindex);
+    }
+
+    @Benchmark
+    public TideTable decodeWindow() {
+        return db.table(portindex, now - 86400, now + 50 * 86400);
+    }
+}
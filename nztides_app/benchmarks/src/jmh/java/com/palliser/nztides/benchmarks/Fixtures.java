@@ -0,0 +1,83 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import com.palliser.nztides.core.ConstituentDatabase;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Loads the app's shipped assets for use as benchmark fixtures.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static File assetsDir() {
+        return new File(System.getProperty("nztides.assets", "../app/src/main/assets"));
+    }
+
+    /** The LINZ prediction files the database is built from */
+    static File tidelookupDir() {
+        return new File(System.getProperty("nztides.tidelookup", "../../tidelookup"));
+    }
+
+    static File databaseFile() {
+        return new File(assetsDir(), TideDatabase.ASSET_NAME);
+    }
+
+    static TideDatabase database() throws IOException {
+        FileChannel ch = FileChannel.open(databaseFile().toPath(), StandardOpenOption.READ);
+        try {
+            return TideDatabase.map(ch, 0, ch.size());
+        } finally {
+            ch.close();
+        }
+    }
+
+    static File constituentsFile() {
+        return new File(assetsDir(), ConstituentDatabase.ASSET_NAME);
+    }
+
+    static ConstituentDatabase constituents() throws IOException {
+        FileChannel ch = FileChannel.open(constituentsFile().toPath(), StandardOpenOption.READ);
+        try {
+            return ConstituentDatabase.map(ch, 0, ch.size());
+        } finally {
+            ch.close();
+        }
+    }
+
+    static TideTable table(String port) throws IOException {
+        return database().table(port);
+    }
+
+    /**
+     * The table in the old per port .tdat layout, so the linear scan calc_outstring
+     * used to do can still be compared against.
+     */
+    static byte[] tdatBytes(String port, TideTable table) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(("[" + port + "]\n").getBytes(StandardCharsets.UTF_8));
+        out.writeInt(Integer.reverseBytes(table.lastTime()));
+        out.writeInt(Integer.reverseBytes(table.size()));
+        for (int k = 0; k < table.size(); k++) {
+            out.writeInt(Integer.reverseBytes(table.time(k)));
+            out.writeByte(table.heightCm(k) / 10);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** A time the given fraction of the way between the first and last tide */
+    static int timeAt(TideTable table, double fraction) {
+        return table.firstTime() + (int) (fraction * (table.lastTime() - table.firstTime()));
+    }
+}
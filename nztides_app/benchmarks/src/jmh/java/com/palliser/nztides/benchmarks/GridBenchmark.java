@@ -0,0 +1,65 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideGrid;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * A week of heights at ten minute steps for every port, about 88,000 of them, one
+ * heightAt per point against the plain TideGrid and the one TideGrid.create picks,
+ * which is the vector grid when the vector module is there (see the jmh jvmArgs).
+ */
+@State(Scope.Benchmark)
+public class GridBenchmark {
+
+    static final int STEP = 600;
+    static final int STEPS = 7 * 24 * 6;
+
+    private TideTable[] tables;
+    private TideGrid scalar;
+    private TideGrid vector;
+    private float[] grid;
+    private int start;
+
+    @Setup
+    public void setup() throws IOException {
+        TideDatabase db = Fixtures.database();
+        tables = new TideTable[db.numPorts()];
+        for (int p = 0; p < tables.length; p++)
+            tables[p] = db.table(p);
+        scalar = new TideGrid(tables);
+        vector = TideGrid.create(tables);
+        System.out.println("grid: " + vector.kind());
+        grid = new float[STEPS * tables.length];
+        start = Fixtures.timeAt(db.table("Auckland"), 0.5);
+    }
+
+    @Benchmark
+    public float[] perPoint() {
+        for (int k = 0; k < STEPS; k++) {
+            int t = start + k * STEP;
+            for (int p = 0; p < tables.length; p++)
+                grid[k * tables.length + p] = (float) tables[p].heightAt(t);
+        }
+        return grid;
+    }
+
+    @Benchmark
+    public float[] scalarGrid() {
+        scalar.evaluate(start, STEP, STEPS, grid, 0);
+        return grid;
+    }
+
+    @Benchmark
+    public float[] vectorGrid() {
+        vector.evaluate(start, STEP, STEPS, grid, 0);
+        return grid;
+    }
+}
@@ -0,0 +1,122 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.ConstituentDatabase;
+import com.palliser.nztides.core.HarmonicModel;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Harmonic predictions against the lookup table: single heights, a day of heights a
+ * minute apart, a screen's worth of highs and lows, and decoding a port from each
+ * asset. The asset and heap sizes of both are printed during setup.
+ */
+@State(Scope.Thread)
+public class HarmonicBenchmark {
+
+    private static final int NUM_TIMES = 1024;
+    private static final int DAY_SAMPLES = 24 * 60;
+    /** about as many tides as the main screen lists */
+    private static final int SCREEN_SPAN = 37 * 86400;
+
+    private TideDatabase db;
+    private ConstituentDatabase cdb;
+    private int tableport;
+    private int modelport;
+    private TideTable table;
+    private HarmonicModel model;
+    private final int[] times = new int[NUM_TIMES];
+    private final float[] day = new float[DAY_SAMPLES];
+    private final int[] extremetimes = new int[256];
+    private final short[] extremeheights = new short[256];
+    private int k;
+
+    @Setup
+    public void setup() throws IOException {
+        db = Fixtures.database();
+        cdb = Fixtures.constituents();
+        tableport = db.portIndex("Auckland");
+        modelport = cdb.portIndex("Auckland");
+        table = db.table(tableport);
+        model = cdb.model(modelport);
+        Random rnd = new Random(42);
+        for (int j = 0; j < NUM_TIMES; j++)
+            times[j] = Fixtures.timeAt(table, rnd.nextDouble());
+        System.out.printf("%nAuckland: table %d records, %d bytes on disk, %d bytes heap;"
+                        + " model %d constituents, %d bytes on disk, %d bytes heap%n",
+                table.size(), table.size() * TideDatabase.RECORD_SIZE, table.sizeInBytes(),
+                model.numConstituents(), Fixtures.constituentsFile().length() / cdb.numPorts(), model.sizeInBytes());
+    }
+
+    @Benchmark
+    public double tableHeightAt() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return table.heightAt(times[k]);
+    }
+
+    @Benchmark
+    public double modelHeightAt() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return model.heightAt(times[k]);
+    }
+
+    @Benchmark
+    public float[] tableDay() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        int start = times[k];
+        for (int j = 0; j < DAY_SAMPLES; j++)
+            day[j] = (float) table.heightAt(start + 60 * j);
+        return day;
+    }
+
+    /** A day a minute apart calling Math.cos for every constituent, for comparison */
+    @Benchmark
+    public float[] modelDayDirect() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        int start = times[k];
+        for (int j = 0; j < DAY_SAMPLES; j++)
+            day[j] = (float) model.heightAt(start + 60 * j);
+        return day;
+    }
+
+    @Benchmark
+    public float[] modelDay() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        model.sample(times[k], 60, day, 0, DAY_SAMPLES);
+        return day;
+    }
+
+    @Benchmark
+    public int tableExtremes() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        int first = table.indexAfter(times[k]);
+        int last = table.indexAfter(times[k] + SCREEN_SPAN);
+        int sum = 0;
+        for (int j = first; j < last; j++)
+            sum += table.time(j) + table.heightCm(j);
+        return sum;
+    }
+
+    @Benchmark
+    public int modelExtremes() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return model.extremes(times[k], times[k] + SCREEN_SPAN, extremetimes, extremeheights);
+    }
+
+    @Benchmark
+    public TideTable decodeTable() {
+        return db.table(tableport);
+    }
+
+    @Benchmark
+    public HarmonicModel decodeModel() {
+        return cdb.model(modelport);
+    }
+}
@@ -0,0 +1,72 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * The cosine height and rise rate, evaluated at random times through the table,
+ * and a week of heights a minute apart sampled in one go or one at a time.
+ */
+@State(Scope.Thread)
+public class InterpolationBenchmark {
+
+    private static final int NUM_TIMES = 1024;
+    private static final int CURVE_SAMPLES = 7 * 24 * 60;
+
+    private TideTable table;
+    private final int[] times = new int[NUM_TIMES];
+    private final int[] segments = new int[NUM_TIMES];
+    private final float[] curve = new float[CURVE_SAMPLES];
+    private int k;
+
+    @Setup
+    public void setup() throws IOException {
+        table = Fixtures.table("Auckland");
+        Random rnd = new Random(42);
+        for (int j = 0; j < NUM_TIMES; j++) {
+            times[j] = Fixtures.timeAt(table, rnd.nextDouble());
+            segments[j] = table.nextExtremum(times[j]);
+        }
+    }
+
+    @Benchmark
+    public double heightAt() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return table.heightAt(times[k]);
+    }
+
+    @Benchmark
+    public double rateAt() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return table.rateAt(times[k]);
+    }
+
+    @Benchmark
+    public double segmentHeight() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return table.segmentHeight(segments[k], times[k]);
+    }
+
+    @Benchmark
+    public float[] sampleCurve() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        table.sample(times[k], 60, curve, 0, CURVE_SAMPLES);
+        return curve;
+    }
+
+    @Benchmark
+    public float[] heightAtCurve() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        int start = times[k];
+        for (int j = 0; j < CURVE_SAMPLES; j++)
+            curve[j] = (float) table.heightAt(start + 60 * j);
+        return curve;
+    }
+}
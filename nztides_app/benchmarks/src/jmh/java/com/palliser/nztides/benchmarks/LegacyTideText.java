@@ -0,0 +1,166 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.EOFException;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * The main screen text as it was built before TideText reused its buffers, with new
+ * DecimalFormat and SimpleDateFormat objects and string concatenation on every line.
+ * Kept as a baseline for RenderBenchmark.
+ */
+final class LegacyTideText {
+
+	/** Number of tides listed after the current pair */
+	static final int NUM_LISTED = 35 * 4;
+
+	private LegacyTideText() {
+	}
+
+	/**
+	 * Render the screen for port at time nowsecs (seconds since 1970).
+	 * Throws EOFException if the table runs out before the list of tides is complete.
+	 */
+	static String render(String port, TideTable table, int nowsecs) throws EOFException {
+		StringBuffer outstring = new StringBuffer("");
+		int num_rows=8;
+		int num_cols=34;
+		int t = 0,told;
+		float h=0;
+		float hold;
+		int lasttide;
+		char [][] graph = new char[num_rows][num_cols+1];
+
+		DecimalFormat nformat1 = new DecimalFormat(" 0.00;-0.00");
+		DecimalFormat nformat2 = new DecimalFormat("0.00");
+		DecimalFormat nformat3 = new DecimalFormat("00");
+		DecimalFormat nformat4 = new DecimalFormat(" 0.0;-0.0");
+		//SimpleDateFormat dformat = new SimpleDateFormat(
+		//    	"HH:mm E dd-MM-yyyy zzz");
+		SimpleDateFormat dformat = new SimpleDateFormat(
+				"HH:mm E dd/MM/yy zzz");
+
+		//timestamp for last tide in datafile
+		lasttide = table.lastTime();
+
+		told = table.time(0);
+		hold = table.height(0);
+
+		if(told>nowsecs){
+			outstring.append("The first tide in this datafile doesn't occur until ");
+			outstring.append(dformat.format(new Date(1000*(long)told)));
+			outstring.append(". The app should start working properly about then.");
+		} else {
+
+			//binary search the table for the first tide after the current time
+			int next = table.nextExtremum(nowsecs);
+			if (next < 0 || next + NUM_LISTED >= table.size())
+				throw new EOFException("not enough tides left in datafile");
+			told = table.time(next - 1);
+			hold = table.height(next - 1);
+			t = table.time(next);
+			h = table.height(next);
+
+			//frequency of the cosine wave used to interpolate between tides
+			double omega = table.segmentOmega(next);
+			double x, phase;
+
+			// make ascii art plot
+
+			for (int k = 0; k < num_rows; k++) {
+				for (int j = 0; j < num_cols; j++) {
+					graph[k][j] = ' ';
+				}
+				graph[k][num_cols] = '\n';
+			}
+
+			for (int k = 0; k < num_cols; k++) {
+				x = (1.0 + (hold > h ? -1 : 1) * Math.sin(k * 2 * Math.PI / (num_cols - 1))) / 2.0;
+				x = ((num_rows - 1) * x + 0.5);
+				graph[(int) x][k] = '*';
+				//graph[k%num_rows][k]='*';
+			}
+
+			phase = omega * (nowsecs - told);
+			x = (phase + Math.PI / 2) / (2.0 * Math.PI);
+			x = ((num_cols - 1) * x + 0.5);
+			for (int j = 0; j < num_rows; j++) {
+				graph[j][(int) x] = '|';
+			}
+
+
+			double currentht = table.segmentHeight(next, nowsecs);
+			double riserate = table.segmentRate(next, nowsecs);
+
+
+			//Start populating outstring
+			outstring.append("[" + port + "] " + nformat4.format(currentht) + "m");
+			//display up arrow or down arrow depending on weather tide is rising or falling
+			if (hold < h)
+				outstring.append(" \u2191");//up arrow
+			else
+				outstring.append(" \u2193");//down arrow
+
+			outstring.append(nformat2.format(Math.abs(riserate)) + "m/hr\n");
+			outstring.append("---------------\n");
+
+			int time_to_previous = (nowsecs - told);
+			int time_to_next = (t - nowsecs);
+			boolean hightidenext = (h > hold);
+
+			if (time_to_previous < time_to_next) {
+				if (hightidenext) {
+					outstring.append("Low tide (" + hold + "m) " + (int) (time_to_previous / 3600) +
+							"h" + nformat3.format((int) (time_to_previous / 60) % 60) + "m ago\n");
+				} else {
+					outstring.append("High tide (" + hold + "m) " + (int) (time_to_previous / 3600) +
+							"h" + nformat3.format((int) (time_to_previous / 60) % 60) + "m ago\n");
+				}
+			} else {
+				if (hightidenext) {
+					outstring.append("High tide (" + h + "m) in " + (int) (time_to_next / 3600) +
+							"h" + nformat3.format((int) (time_to_next / 60) % 60) + "m\n");
+				} else {
+					outstring.append("Low tide (" + h + "m) in " + (int) (time_to_next / 3600) +
+							"h" + nformat3.format((int) (time_to_next / 60) % 60) + "m\n");
+				}
+
+			}
+			//outstring.append("---------------\n");
+			//int num_minutes=(int)((nowsecs-told)/(60));
+			//outstring.append("Last tide " + hold + "m,    "+num_minutes/60  + "h" +nformat3.format(num_minutes%60) +"m ago\n");
+			//num_minutes=(int)((t -nowsecs)/(60));
+			//outstring.append("Next tide " + h + "m, in " +num_minutes/60  + "h" +nformat3.format(num_minutes%60) +"m\n");
+			//outstring.append("---------------\n");
+			outstring.append("\n");
+
+			for (int k = 0; k < num_rows; k++) {
+				for (int j = 0; j < num_cols + 1; j++) {
+					outstring.append(graph[k][j]);
+				}
+			}
+
+			//outstring.append("---------------\n");
+			outstring.append("\n");
+
+
+			hightidenext = !hightidenext;
+			outstring.append(nformat1.format(hold) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) told)) + '\n');
+			hightidenext = !hightidenext;
+			outstring.append(nformat1.format(h) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) t)) + '\n');
+
+			for (int k = 0; k < NUM_LISTED; k++) {
+				hightidenext = !hightidenext;
+				t = table.time(next + 1 + k);
+				h = table.height(next + 1 + k);
+				outstring.append(nformat1.format(h) + (hightidenext ? " H " : " L ") + dformat.format(new Date(1000 * (long) t)) + '\n');
+			}
+			outstring.append("The last tide in this datafile occurs at:\n");
+			outstring.append(dformat.format(new Date(1000 * (long) lasttide)));
+		}
+		return outstring.toString();
+	}
+}
@@ -0,0 +1,60 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Finding the first tide after "now", with now a given fraction of the way through
+ * the table. The linear scan is the loop calc_outstring used to run over the old
+ * per port .tdat assets.
+ */
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"Auckland"})
+    public String port;
+
+    @Param({"0.05", "0.5", "0.95"})
+    public double position;
+
+    private byte[] bytes;
+    private TideTable table;
+    private int nowsecs;
+
+    @Setup
+    public void setup() throws IOException {
+        table = Fixtures.table(port);
+        bytes = Fixtures.tdatBytes(port, table);
+        nowsecs = Fixtures.timeAt(table, position);
+    }
+
+    @Benchmark
+    public int linearScan() throws IOException {
+        DataInputStream tidedat = new DataInputStream(new ByteArrayInputStream(bytes));
+        while (tidedat.read() != '\n')
+            ;
+        tidedat.readInt();//last tide
+        tidedat.readInt();//number of records
+        int t;
+        for (;;) {
+            t = Integer.reverseBytes(tidedat.readInt());
+            tidedat.readByte();
+            if (t > nowsecs)
+                return t;
+        }
+    }
+
+    @Benchmark
+    public int tableBinarySearch() {
+        return table.indexAfter(nowsecs);
+    }
+}
@@ -0,0 +1,47 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.palliser.nztides.core.TideMetrics;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideText;
+
+/**
+ * What the timers and counters in the render path cost, with metrics switched off
+ * and on.
+ */
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private TideTable table;
+    private int nowsecs;
+    private final TideText renderer = new TideText();
+
+    @Setup
+    public void setup() throws IOException {
+        table = Fixtures.table("Auckland");
+        nowsecs = Fixtures.timeAt(table, 0.5);
+        TideMetrics.setEnabled(enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TideMetrics.setEnabled(false);
+        TideMetrics.reset();
+    }
+
+    @Benchmark
+    public CharSequence render() throws IOException {
+        return renderer.render("Auckland", table, nowsecs);
+    }
+}
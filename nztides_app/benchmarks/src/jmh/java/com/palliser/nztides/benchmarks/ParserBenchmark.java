@@ -0,0 +1,91 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.build.TideFileReader;
+
+/**
+ * Reading every file in tidelookup/csvfiles or tidelookup/txtfiles (old years
+ * included), with TideFileReader parsing the rows where they sit in its buffer,
+ * against reading lines and splitting them into Strings as the python converters
+ * did. The files are held in memory so only the parsing is timed; an op is the whole
+ * corpus and returns the number of tides.
+ */
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"csvfiles", "txtfiles"})
+    public String corpus;
+
+    private final TideFileReader reader = new TideFileReader();
+    private byte[][] files;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> found = Files.walk(Fixtures.tidelookupDir().toPath().resolve(corpus))) {
+            found.filter(Files::isRegularFile).sorted().forEach(paths::add);
+        }
+        files = new byte[paths.size()][];
+        names = new String[paths.size()];
+        for (int k = 0; k < files.length; k++) {
+            files[k] = Files.readAllBytes(paths.get(k));
+            names[k] = paths.get(k).getFileName().toString();
+        }
+    }
+
+    @Benchmark
+    public int reader() throws IOException {
+        int tides = 0;
+        for (int k = 0; k < files.length; k++)
+            tides += reader.read(new ByteArrayInputStream(files[k]), names[k]).size();
+        return tides;
+    }
+
+    /** Times are left as local minutes, the split version is slow enough without the time zone */
+    @Benchmark
+    public int splitLines() throws IOException {
+        boolean csv = corpus.startsWith("csv");
+        int tides = 0;
+        long check = 0;
+        for (byte[] file : files) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(file),
+                    StandardCharsets.ISO_8859_1));
+            for (int k = 0; k < 3; k++)
+                in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty())
+                    break;
+                String[] f = csv ? line.split(",") : line.split(" +");
+                check += Integer.parseInt(f[0]);
+                for (int k = csv ? 4 : 3; k + 1 < f.length; k += 2) {
+                    if (f[k].isEmpty() || f[k].equals("9999"))
+                        break;
+                    int mins = csv ? 60 * Integer.parseInt(f[k].split(":")[0]) + Integer.parseInt(f[k].split(":")[1])
+                            : 60 * Integer.parseInt(f[k].substring(0, 2)) + Integer.parseInt(f[k].substring(2));
+                    check += mins + Math.round(Double.parseDouble(f[k + 1]) * 10);
+                    tides++;
+                }
+            }
+        }
+        return check == 0 ? -1 : tides;
+    }
+}
@@ -0,0 +1,56 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideCursor;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideText;
+
+/**
+ * Building the full main screen text, graph and list of tides included, with the
+ * reusable TideText against the old allocate-per-line version. Compare the
+ * gc.alloc.rate.norm figures for the garbage each produces. renderTick is the
+ * once a minute update, a cursor moving on a minute at a time.
+ */
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    private TideTable table;
+    private int nowsecs;
+    private final TideText renderer = new TideText();
+    private final TideText ticker = new TideText();
+    private TideCursor cursor;
+    private int ticksecs;
+
+    @Setup
+    public void setup() throws IOException {
+        table = Fixtures.table("Auckland");
+        nowsecs = Fixtures.timeAt(table, 0.5);
+        cursor = new TideCursor(table);
+        ticksecs = nowsecs;
+    }
+
+    @Benchmark
+    public CharSequence render() throws IOException {
+        return renderer.render("Auckland", table, nowsecs);
+    }
+
+    @Benchmark
+    public CharSequence renderTick() throws IOException {
+        ticksecs += 60;
+        if (ticksecs > nowsecs + 30 * 86400)
+            ticksecs = nowsecs;
+        cursor.moveTo(ticksecs);
+        return ticker.render("Auckland", cursor);
+    }
+
+    @Benchmark
+    public String renderLegacy() throws IOException {
+        return LegacyTideText.render("Auckland", table, nowsecs);
+    }
+}
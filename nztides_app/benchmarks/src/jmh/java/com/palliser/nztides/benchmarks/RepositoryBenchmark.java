@@ -0,0 +1,63 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideRepository;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideTableCache;
+
+/**
+ * Getting an already decoded table from several threads at once, from the lock free
+ * TideRepository against the synchronized TideTableCache.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class RepositoryBenchmark {
+
+    private TideDatabase db;
+    private final TideRepository repository = new TideRepository();
+    private final TideTableCache cache = new TideTableCache(Long.MAX_VALUE);
+    private String[] names;
+
+    private final TideTableCache.Loader loader = new TideTableCache.Loader() {
+        public TideTable load(String port) throws IOException {
+            return db.table(port);
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int port;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        db = Fixtures.database();
+        repository.install(db);
+        names = new String[db.numPorts()];
+        for (int p = 0; p < names.length; p++) {
+            names[p] = db.portName(p);
+            repository.snapshot().table(p);
+            cache.get(names[p], loader);
+        }
+    }
+
+    @Benchmark
+    public TideTable repository(Cursor c) throws IOException {
+        c.port = (c.port + 1) % names.length;
+        return repository.snapshot().table(c.port);
+    }
+
+    @Benchmark
+    public TideTable cache(Cursor c) throws IOException {
+        c.port = (c.port + 1) % names.length;
+        return cache.get(names[c.port], loader);
+    }
+}
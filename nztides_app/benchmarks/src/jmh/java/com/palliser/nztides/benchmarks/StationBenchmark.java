@@ -0,0 +1,85 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.StationIndex;
+import com.palliser.nztides.core.TideDatabase;
+
+/**
+ * Finding the ports near random positions around New Zealand with the station index,
+ * against measuring the distance to every port.
+ */
+@State(Scope.Thread)
+public class StationBenchmark {
+
+    private static final int NUM_PLACES = 1024;
+    private static final int K = 5;
+    private static final double RADIUS_KM = 50;
+
+    private StationIndex index;
+    private double[] portlat;
+    private double[] portlon;
+    private final double[] lat = new double[NUM_PLACES];
+    private final double[] lon = new double[NUM_PLACES];
+    private final int[] out = new int[K];
+    private final double[] dist = new double[K];
+    private final int[] all = new int[128];
+    private int k;
+
+    @Setup
+    public void setup() throws IOException {
+        TideDatabase db = Fixtures.database();
+        index = db.stations();
+        portlat = new double[db.numPorts()];
+        portlon = new double[db.numPorts()];
+        for (int p = 0; p < db.numPorts(); p++) {
+            portlat[p] = db.latitude(p);
+            portlon[p] = db.longitude(p);
+        }
+        Random rnd = new Random(42);
+        for (int j = 0; j < NUM_PLACES; j++) {
+            lat[j] = -34 - 13 * rnd.nextDouble();
+            lon[j] = 166 + 13 * rnd.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public int indexNearest() {
+        k = (k + 1) & (NUM_PLACES - 1);
+        index.nearest(lat[k], lon[k], out, dist);
+        return out[0];
+    }
+
+    @Benchmark
+    public int indexWithin() {
+        k = (k + 1) & (NUM_PLACES - 1);
+        return index.within(lat[k], lon[k], RADIUS_KM, all, null);
+    }
+
+    /** Distance to every port, keeping the K nearest */
+    @Benchmark
+    public int scanNearest() {
+        k = (k + 1) & (NUM_PLACES - 1);
+        int n = 0;
+        for (int p = 0; p < portlat.length; p++) {
+            double d = StationIndex.distanceKm(lat[k], lon[k], portlat[p], portlon[p]);
+            if (n == K && d >= dist[K - 1])
+                continue;
+            int j = n < K ? n++ : K - 1;
+            while (j > 0 && dist[j - 1] > d) {
+                dist[j] = dist[j - 1];
+                out[j] = out[j - 1];
+                j--;
+            }
+            dist[j] = d;
+            out[j] = p;
+        }
+        return out[0];
+    }
+}
@@ -0,0 +1,79 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.TideWindows;
+
+/**
+ * A year of the windows with more than 1.5m of water at every port, solved from the
+ * tides with TideWindows against sampling the curve every minute.
+ */
+@State(Scope.Thread)
+public class WindowBenchmark {
+
+    private static final double HEIGHT = 1.5;
+    private static final int YEAR = 365 * 86400;
+    private static final int STEP = 60;
+
+    private TideDatabase db;
+    private TideTable[] tables;
+    private int from;
+    private final float[] curve = new float[YEAR / STEP];
+
+    private final TideWindows.Sink sink = new TideWindows.Sink() {
+        @Override
+        public void window(int port, int start, int end) {
+            total += end - start;
+        }
+    };
+    private long total;
+
+    @Setup
+    public void setup() throws IOException {
+        db = Fixtures.database();
+        tables = new TideTable[db.numPorts()];
+        int first = Integer.MIN_VALUE;
+        for (int p = 0; p < tables.length; p++) {
+            tables[p] = db.table(p);
+            first = Math.max(first, tables[p].firstTime());
+        }
+        from = first;
+    }
+
+    /** Every port from tables already decoded */
+    @Benchmark
+    public long solveTables() {
+        total = 0;
+        TideWindows.find(tables, HEIGHT, true, from, from + YEAR, sink);
+        return total;
+    }
+
+    /** Every port straight from the database, decoding each table as it goes */
+    @Benchmark
+    public long solveDatabase() {
+        total = 0;
+        TideWindows.find(db, HEIGHT, true, from, from + YEAR, sink);
+        return total;
+    }
+
+    /** Every port by sampling once a minute and counting the minutes above */
+    @Benchmark
+    public long sampleTables() {
+        long minutes = 0;
+        for (TideTable table : tables) {
+            table.sample(from, STEP, curve, 0, curve.length);
+            for (float h : curve) {
+                if (h > HEIGHT)
+                    minutes++;
+            }
+        }
+        return minutes * STEP;
+    }
+}
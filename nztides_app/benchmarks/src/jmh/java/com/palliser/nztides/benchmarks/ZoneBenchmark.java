@@ -0,0 +1,60 @@
+package com.palliser.nztides.benchmarks;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.ZoneTable;
+
+/**
+ * Turning tide times into NZ local days with the database's zone table, against
+ * TimeZone.getOffset and a Calendar as SimpleDateFormat does.
+ */
+@State(Scope.Thread)
+public class ZoneBenchmark {
+
+    private static final int NUM_TIMES = 1024;
+
+    private ZoneTable table;
+    private final TimeZone zone = TimeZone.getTimeZone("Pacific/Auckland");
+    private final Calendar calendar = Calendar.getInstance(zone);
+    private final int[] times = new int[NUM_TIMES];
+    private int k;
+
+    @Setup
+    public void setup() throws IOException {
+        TideDatabase db = Fixtures.database();
+        table = db.zone();
+        int first = db.table(0).firstTime();
+        Random rnd = new Random(42);
+        for (int j = 0; j < NUM_TIMES; j++)
+            times[j] = first + rnd.nextInt(3 * 365 * 86400);
+    }
+
+    @Benchmark
+    public int zoneTable() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        return table.localDay(times[k]);
+    }
+
+    @Benchmark
+    public int timeZone() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        long local = times[k] + zone.getOffset(1000L * times[k]) / 1000;
+        return (int) Math.floorDiv(local, 86400L);
+    }
+
+    @Benchmark
+    public int calendar() {
+        k = (k + 1) & (NUM_TIMES - 1);
+        calendar.setTimeInMillis(1000L * times[k]);
+        return calendar.get(Calendar.DAY_OF_YEAR);
+    }
+}
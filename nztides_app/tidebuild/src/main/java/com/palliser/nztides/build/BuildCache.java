@@ -0,0 +1,276 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * What the last BuildTideDatabase run was made from, so the next only reads the ports
+ * whose CSVs have changed.
+ *
+ * The cache directory holds manifest.txt and each port's tides as read from its CSVs
+ * in ports/key.bin, the key being a SHA-256 of the tool version and the names and
+ * contents of the port's CSVs. The manifest gives the tool version, the hash of the
+ * tides.tdb written and each port's key and inputs, with the size, modified time and
+ * hash of each, tab separated:
+ * <pre>
+ *   tool    4.3
+ *   output  9f86d081...
+ *   port    Akaroa  1b4f0e98...
+ *   input   Akaroa_2025.csv  35210  1760481522000  e3b0c442...
+ * </pre>
+ * As with git's index, an input whose size and modified time match the manifest is
+ * taken to have the hash recorded there rather than being read and hashed again.
+ * Everything is written to a temporary file alongside and moved into place, so a
+ * build stopped part way never leaves a half written file, and outputs whose bytes
+ * haven't changed are left alone altogether.
+ */
+final class BuildCache {
+
+    /** Bump when reading or encoding changes, so every port is read again */
+    static final String TOOL_VERSION = TideDatabase.VERSION + ".3";
+
+    private static final int PORT_MAGIC = 0x4e5a5043;//"NZPC", not the "NZTC" of constituents.tcon
+
+    private final Path dir;
+    private final Path manifest;
+    /** The last manifest's input lines by file name, less the hash */
+    private final Map<String, String> stamps = new HashMap<>();
+    private final Map<String, String> stamphashes = new HashMap<>();
+    private final List<String> lines;
+
+    BuildCache(Path dir) throws IOException {
+        this.dir = dir;
+        manifest = dir.resolve("manifest.txt");
+        List<String> read;
+        try {
+            read = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            read = new ArrayList<>();
+        }
+        lines = read;
+        for (String line : lines) {
+            if (line.startsWith("input\t")) {
+                int tab = line.lastIndexOf('\t');
+                String stamp = line.substring(0, tab);
+                String name = stamp.substring(6, stamp.indexOf('\t', 6));
+                stamps.put(name, stamp);
+                stamphashes.put(name, line.substring(tab + 1));
+            }
+        }
+    }
+
+    /** A port's tides and station position as read from its CSVs, and the report on them */
+    static final class Port {
+        final TideTable table;
+        final double latitude;
+        final double longitude;
+        final String report;
+
+        Port(TideTable table, double latitude, double longitude, String report) {
+            this.table = table;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.report = report;
+        }
+    }
+
+    /**
+     * SHA-256 of the file's contents in hex, from the manifest if the file's size and
+     * modified time are what they were last time.
+     */
+    String inputHash(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        String stamp = stamps.get(name);
+        if (stamp != null && stamp.equals(stamp(file)))
+            return stamphashes.get(name);
+        return hash(file);
+    }
+
+    private static String stamp(Path file) throws IOException {
+        return "input\t" + file.getFileName() + "\t" + Files.size(file) + "\t"
+                + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /** SHA-256 of the file's contents, in hex */
+    static String hash(Path file) throws IOException {
+        MessageDigest md = sha256();
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0)
+                md.update(buf, 0, n);
+        }
+        return hex(md.digest());
+    }
+
+    static String hash(byte[] bytes) {
+        return hex(sha256().digest(bytes));
+    }
+
+    /** Key of a port made from files whose contents hash to hashes */
+    static String key(List<Path> files, List<String> hashes) {
+        MessageDigest md = sha256();
+        md.update(TOOL_VERSION.getBytes(StandardCharsets.UTF_8));
+        for (int k = 0; k < files.size(); k++) {
+            md.update((byte) 0);
+            md.update(files.get(k).getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(hashes.get(k).getBytes(StandardCharsets.US_ASCII));
+        }
+        return hex(md.digest());
+    }
+
+    /**
+     * True if the manifest says dest was built by this tool version from ports with
+     * exactly these names and keys, in this order, and dest is still what was written.
+     */
+    boolean upToDate(List<String> names, String[] keys, Path dest) throws IOException {
+        String output = null;
+        List<String> expected = new ArrayList<>();
+        expected.add("tool\t" + TOOL_VERSION);
+        for (int p = 0; p < names.size(); p++)
+            expected.add("port\t" + names.get(p) + "\t" + keys[p]);
+        List<String> found = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("output\t"))
+                output = line.substring(7);
+            else if (line.startsWith("tool\t") || line.startsWith("port\t"))
+                found.add(line);
+        }
+        return found.equals(expected) && output != null && Files.isRegularFile(dest) && hash(dest).equals(output);
+    }
+
+    void writeManifest(List<String> names, List<List<Path>> files, List<List<String>> hashes, String[] keys,
+            byte[] output) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("tool\t").append(TOOL_VERSION).append('\n');
+        sb.append("output\t").append(hash(output)).append('\n');
+        for (int p = 0; p < names.size(); p++) {
+            sb.append("port\t").append(names.get(p)).append('\t').append(keys[p]).append('\n');
+            for (int k = 0; k < files.get(p).size(); k++) {
+                sb.append(stamp(files.get(p).get(k))).append('\t').append(hashes.get(p).get(k)).append('\n');
+            }
+        }
+        writeIfChanged(manifest, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        //drop ports cached from inputs that are gone
+        Path ports = dir.resolve("ports");
+        if (Files.isDirectory(ports)) {
+            List<String> keep = Arrays.asList(keys);
+            try (DirectoryStream<Path> cached = Files.newDirectoryStream(ports, "*.bin")) {
+                for (Path file : cached) {
+                    String name = file.getFileName().toString();
+                    if (!keep.contains(name.substring(0, name.length() - 4)))
+                        Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path portFile(String key) {
+        return dir.resolve("ports").resolve(key + ".bin");
+    }
+
+    /** The port cached under key, or null if it isn't there or can't be read */
+    Port load(String key) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(portFile(key)));
+            if (buf.getInt() != PORT_MAGIC)
+                return null;
+            double lat = buf.getDouble();
+            double lon = buf.getDouble();
+            byte[] report = new byte[buf.getInt()];
+            buf.get(report);
+            int[] times = new int[buf.getInt()];
+            short[] heights = new short[times.length];
+            buf.asIntBuffer().get(times);
+            buf.position(buf.position() + 4 * times.length);
+            buf.asShortBuffer().get(heights);
+            return new Port(new TideTable(times, heights), lat, lon, new String(report, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            return null;//read it from the CSVs again
+        }
+    }
+
+    /** Cache port under key: magic, position, report, then its times and heights as arrays */
+    void store(String key, Port port) throws IOException {
+        byte[] report = port.report.getBytes(StandardCharsets.UTF_8);
+        int n = port.table.size();
+        int[] times = new int[n];
+        short[] heights = new short[n];
+        for (int k = 0; k < n; k++) {
+            times[k] = port.table.time(k);
+            heights[k] = port.table.heightCm(k);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(28 + report.length + 6 * n);
+        buf.putInt(PORT_MAGIC);
+        buf.putDouble(port.latitude);
+        buf.putDouble(port.longitude);
+        buf.putInt(report.length);
+        buf.put(report);
+        buf.putInt(n);
+        buf.asIntBuffer().put(times);
+        buf.position(buf.position() + 4 * n);
+        buf.asShortBuffer().put(heights);
+        writeIfChanged(portFile(key), buf.array());
+    }
+
+    /**
+     * Replace dest with bytes by writing them alongside and moving them over it, unless
+     * dest already holds exactly those bytes. Returns true if dest was written.
+     */
+    static boolean writeIfChanged(Path dest, byte[] bytes) throws IOException {
+        Path abs = dest.toAbsolutePath();
+        if (Files.isRegularFile(abs) && Files.size(abs) == bytes.length
+                && Arrays.equals(Files.readAllBytes(abs), bytes))
+            return false;
+        Files.createDirectories(abs.getParent());
+        Path tmp = Files.createTempFile(abs.getParent(), abs.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            try {
+                Files.move(tmp, abs, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, abs, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);//every JVM has it
+        }
+    }
+
+    private static String hex(byte[] b) {
+        char[] c = new char[2 * b.length];
+        for (int k = 0; k < b.length; k++) {
+            c[2 * k] = Character.forDigit(b[k] >> 4 & 0xf, 16);
+            c[2 * k + 1] = Character.forDigit(b[k] & 0xf, 16);
+        }
+        return new String(c);
+    }
+}
@@ -0,0 +1,187 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Collator;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Converts the LINZ CSVs downloaded by tidelookup/downloadcsvfiles.py into the app's
+ * tides.tdb. Files are named "port_year.csv"; every port found is included, in
+ * alphabetical order, with its years joined end to end. Ports are read in parallel
+ * on the common fork join pool and the database is written in one go at the end.
+ *
+ * Given a cache directory the build is incremental, see BuildCache: only ports whose
+ * CSVs have changed are read again, and if none have tides.tdb isn't touched at all.
+ *
+ * usage: BuildTideDatabase csvdir tides.tdb [cachedir]
+ */
+public final class BuildTideDatabase {
+
+    /** Usual time between a high and a low, the daylight saving check looks for gaps far from it */
+    private static final int USUAL_GAP = 22350;
+    private static final int GAP_TOLERANCE = 30 * 60;
+
+    private BuildTideDatabase() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: BuildTideDatabase csvdir tides.tdb [cachedir]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        Map<String, List<Path>> ports = findPorts(Paths.get(args[0]));
+        if (ports.isEmpty()) {
+            System.err.println("no port_year.csv files in " + args[0]);
+            System.exit(1);
+        }
+        List<String> names = new ArrayList<>(ports.keySet());
+        Path dest = Paths.get(args[1]);
+
+        BuildCache cache = args.length > 2 ? new BuildCache(Paths.get(args[2])) : null;
+        List<List<Path>> files = new ArrayList<>();
+        List<List<String>> hashes = new ArrayList<>();
+        String[] keys = new String[names.size()];
+        if (cache != null) {
+            for (int p = 0; p < names.size(); p++) {
+                List<Path> inputs = ports.get(names.get(p));
+                List<String> h = new ArrayList<>();
+                for (Path file : inputs)
+                    h.add(cache.inputHash(file));
+                files.add(inputs);
+                hashes.add(h);
+                keys[p] = BuildCache.key(inputs, h);
+            }
+            if (cache.upToDate(names, keys, dest)) {
+                System.out.printf("%s is up to date: %d ports, checked in %d ms%n",
+                        dest, names.size(), (System.nanoTime() - start) / 1000000);
+                return;
+            }
+        }
+
+        //ports whose inputs haven't changed come from the cache, the rest are read from their CSVs
+        BuildCache.Port[] cached = new BuildCache.Port[names.size()];
+        List<ForkJoinTask<BuildCache.Port>> tasks = new ArrayList<>();
+        int read = 0;
+        for (int p = 0; p < names.size(); p++) {
+            final String port = names.get(p);
+            final String key = keys[p];
+            cached[p] = cache != null ? cache.load(key) : null;
+            if (cached[p] != null) {
+                tasks.add(null);
+                continue;
+            }
+            read++;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                BuildCache.Port tides = readPort(port, ports.get(port));
+                if (cache != null)
+                    cache.store(key, tides);
+                return tides;
+            }));
+        }
+
+        //reports are printed in port order once each port is done
+        List<TideTable> tables = new ArrayList<>();
+        double[] lat = new double[names.size()];
+        double[] lon = new double[names.size()];
+        for (int p = 0; p < names.size(); p++) {
+            BuildCache.Port port = cached[p] != null ? cached[p] : tasks.get(p).get();
+            tables.add(port.table);
+            lat[p] = port.latitude;
+            lon[p] = port.longitude;
+            System.out.print(port.report);
+        }
+
+        //the zone table starts a year before the earliest tide so renders of the first tides are covered
+        int first = Integer.MAX_VALUE;
+        for (TideTable table : tables) {
+            if (table.size() > 0)
+                first = Math.min(first, table.firstTime());
+        }
+        byte[] db = TideDatabaseWriter.encode(names, tables, lat, lon, LinzCsv.zone(first - 366 * 86400));
+        boolean written = BuildCache.writeIfChanged(dest, db);
+        if (cache != null)
+            cache.writeManifest(names, files, hashes, keys, db);
+
+        int records = 0;
+        int last = Integer.MAX_VALUE;
+        for (TideTable table : tables) {
+            records += table.size();
+            last = Math.min(last, table.lastTime());
+        }
+        System.out.printf("%s %s: %d ports (%d read from csv), %d tides, %d bytes in %d ms%n",
+                written ? "wrote" : "unchanged", dest, names.size(), read, records, db.length,
+                (System.nanoTime() - start) / 1000000);
+        System.out.println("the first port to run out does so at " + local(last));
+    }
+
+    /** The CSVs in dir grouped by port, ports in alphabetical order and each port's years in order */
+    static Map<String, List<Path>> findPorts(Path dir) throws IOException {
+        Map<String, TreeMap<Integer, Path>> years = new TreeMap<>(Collator.getInstance(Locale.ENGLISH));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*_*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int us = name.lastIndexOf('_');
+                int year;
+                try {
+                    year = Integer.parseInt(name.substring(us + 1, name.length() - 4));
+                } catch (NumberFormatException e) {
+                    System.out.println("skipping '" + name + "', no year in its name");
+                    continue;
+                }
+                years.computeIfAbsent(name.substring(0, us), k -> new TreeMap<>()).put(year, file);
+            }
+        }
+        Map<String, List<Path>> ports = new TreeMap<>(Collator.getInstance(Locale.ENGLISH));
+        for (Map.Entry<String, TreeMap<Integer, Path>> e : years.entrySet()) {
+            TreeMap<Integer, Path> y = e.getValue();
+            if (y.lastKey() - y.firstKey() + 1 != y.size())
+                System.out.println(e.getKey() + " is missing a year between " + y.firstKey() + " and " + y.lastKey());
+            ports.put(e.getKey(), new ArrayList<>(y.values()));
+        }
+        return ports;
+    }
+
+    private static BuildCache.Port readPort(String port, List<Path> files) throws IOException {
+        TideTableBuilder tides = new TideTableBuilder();
+        StringBuilder report = new StringBuilder();
+        TideFileReader reader = new TideFileReader();
+        for (Path file : files)
+            reader.read(file, tides, report);
+        checkGaps(port, tides, report);
+        return new BuildCache.Port(tides.build(), tides.latitude(), tides.longitude(), report.toString());
+    }
+
+    /** Report tides unusually far apart, which is how daylight saving mistakes show up */
+    private static void checkGaps(String port, TideTableBuilder table, StringBuilder report) {
+        for (int k = 1; k < table.size(); k++) {
+            int diff = table.time(k) - table.time(k - 1);
+            if (Math.abs(diff - USUAL_GAP) > GAP_TOLERANCE) {
+                //hours to two places, without the cost of a Formatter per line
+                int hundredths = (int) Math.round(diff / 36.0);
+                report.append(port).append(' ').append(local(table.time(k))).append(' ')
+                        .append(hundredths / 100).append('.')
+                        .append((char) ('0' + hundredths / 10 % 10)).append((char) ('0' + hundredths % 10))
+                        .append('\n');
+            }
+        }
+    }
+
+    private static LocalDateTime local(int secs) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(secs), LinzCsv.NZ);
+    }
+}
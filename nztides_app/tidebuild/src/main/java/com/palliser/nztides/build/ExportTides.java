@@ -0,0 +1,80 @@
+package com.palliser.nztides.build;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideExport;
+
+/**
+ * Exports the tides of some or all ports in a tide database over a range of dates,
+ * as CSV or an iCalendar file, see TideExport. Dates are UTC, from the start of
+ * the first to the end of the last; with no ports listed every port is exported.
+ *
+ * usage: ExportTides tides.tdb csv|ics from to out [port ...]
+ * eg ExportTides tides.tdb ics 2025-01-01 2025-12-31 auckland.ics Auckland
+ * where out can be - for standard output.
+ */
+public final class ExportTides {
+
+    private ExportTides() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || !(args[1].equals("csv") || args[1].equals("ics"))) {
+            System.err.println("usage: ExportTides tides.tdb csv|ics from to out [port ...]");
+            System.exit(2);
+        }
+        TideDatabase db;
+        try (FileChannel ch = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            db = TideDatabase.map(ch, 0, ch.size());
+        }
+        TideExport.Format format = args[1].equals("csv") ? TideExport.Format.CSV : TideExport.Format.ICALENDAR;
+        int from = seconds(LocalDate.parse(args[2]));
+        int to = seconds(LocalDate.parse(args[3]).plusDays(1));
+
+        int[] ports;
+        if (args.length == 5) {
+            ports = new int[db.numPorts()];
+            for (int p = 0; p < ports.length; p++)
+                ports[p] = p;
+        } else {
+            ports = new int[args.length - 5];
+            for (int k = 5; k < args.length; k++) {
+                ports[k - 5] = db.portIndex(args[k]);
+                if (ports[k - 5] < 0) {
+                    System.err.println("no port called '" + args[k] + "'");
+                    System.exit(1);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        int n;
+        if (args[4].equals("-")) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            n = TideExport.export(db, ports, from, to, format, out);
+        } else {
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[4]), StandardCharsets.UTF_8)) {
+                n = TideExport.export(db, ports, from, to, format, out);
+            }
+        }
+        System.err.printf("exported %d tides of %d ports in %d ms%n",
+                n, ports.length, (System.nanoTime() - start) / 1000000);
+    }
+
+    /** Start of date in UTC as seconds since 1970, clamped to the range of the tide tables' ints */
+    private static int seconds(LocalDate date) {
+        long secs = date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, secs));
+    }
+}
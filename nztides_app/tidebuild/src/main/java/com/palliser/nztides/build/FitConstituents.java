@@ -0,0 +1,130 @@
+package com.palliser.nztides.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.palliser.nztides.core.ConstituentDatabase;
+import com.palliser.nztides.core.Constituents;
+import com.palliser.nztides.core.HarmonicModel;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Fits harmonic constituents to every port in a tide database and writes them out
+ * in the constituents.tcon layout described in ConstituentDatabase.
+ *
+ * Each port is first fitted to all but the last year of its table and its highs and
+ * lows predicted for that year, which gives the error recorded for it. A port whose
+ * predictions are out by more than MAX_RMS_MINUTES or MAX_RMS_METRES there, or miss
+ * or add more than the odd tide, is left out; the rest are fitted again to the whole
+ * table.
+ *
+ * usage: FitConstituents tides.tdb constituents.tcon
+ */
+public final class FitConstituents {
+
+    /** The end of each table held back to check its fit against */
+    static final int CHECK_SPAN = 365 * 86400;
+    static final double MAX_RMS_MINUTES = 15;
+    static final double MAX_RMS_METRES = 0.15;
+    /** Share of the tides checked that can be missed or extra, for the odd double tide in a table */
+    static final double MAX_MISMATCHED = 0.01;
+
+    private FitConstituents() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: FitConstituents tides.tdb constituents.tcon");
+            System.exit(2);
+        }
+        TideDatabase db;
+        try (FileChannel ch = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            db = TideDatabase.map(ch, 0, ch.size());
+        }
+
+        int[] constituents = HarmonicFit.fittedConstituents();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int kept = 0;
+        double worst = 0;
+        for (int p = 0; p < db.numPorts(); p++) {
+            TideTable table = db.table(p);
+            TideComparison check = check(table, constituents);
+            if (!goodEnough(check)) {
+                System.out.printf("%-30s left out, against its last year: %s%n", db.portName(p), check);
+                continue;
+            }
+            HarmonicModel model = HarmonicFit.fit(table, 0, table.size(), constituents, HarmonicFit.EPOCH);
+
+            ByteBuffer record = ByteBuffer.allocate(256 + 4 * constituents.length).order(ByteOrder.LITTLE_ENDIAN);
+            putName(record, db.portName(p));
+            record.put((byte) Math.min(255, Math.ceil(check.rmsMinutes)));
+            record.put((byte) Math.min(255, Math.ceil(check.rmsMetres * 100)));
+            record.putShort((short) Math.round(model.meanLevel() * 1000));
+            for (int j = 0; j < constituents.length; j++) {
+                long amp = Math.round(model.amplitude(j) * 1000);
+                long phase = Math.round(Math.toDegrees(model.phase(j)) * 100);
+                phase = ((phase % 36000) + 36000) % 36000;
+                record.putShort((short) Math.min(amp, 0xffff));
+                record.putShort((short) phase);
+            }
+            records.write(record.array(), 0, record.position());
+            kept++;
+
+            worst = Math.max(worst, check.rmsMinutes);
+            System.out.printf("%-30s z0 %6.3fm  M2 %6.3fm  against its last year: %s%n",
+                    db.portName(p), model.meanLevel(), model.amplitude(Constituents.index("M2")), check);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ConstituentDatabase.MAGIC);
+        header.putShort((short) ConstituentDatabase.VERSION);
+        header.putShort((short) kept);
+        header.putInt(HarmonicFit.EPOCH);
+        header.put((byte) constituents.length);
+        for (int c : constituents)
+            putName(header, Constituents.NAMES[c]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header.array(), 0, header.position());
+        records.writeTo(out);
+
+        byte[] bytes = out.toByteArray();
+        Path dest = Paths.get(args[1]);
+        Files.write(dest, bytes);
+        System.out.printf("wrote %d of %d ports, %d bytes to %s (tide tables %d bytes), worst rms %.1f minutes%n",
+                kept, db.numPorts(), bytes.length, dest, Files.size(Paths.get(args[0])), worst);
+    }
+
+    /**
+     * How well constituents fitted to all but the last CHECK_SPAN of table predict its
+     * tides over that span.
+     */
+    static TideComparison check(TideTable table, int[] constituents) {
+        int split = table.indexAfter(table.lastTime() - CHECK_SPAN);
+        HarmonicModel model = HarmonicFit.fit(table, 0, split, constituents, HarmonicFit.EPOCH);
+        int from = table.time(split);
+        int to = table.lastTime() + 1;
+        //predicted a little either side so the tides at the ends can pair with one
+        TideTable predicted = model.extremes(from - TideComparison.MAX_OFFSET, to + TideComparison.MAX_OFFSET);
+        return TideComparison.compare(table, predicted, from, to);
+    }
+
+    static boolean goodEnough(TideComparison check) {
+        return check.rmsMinutes <= MAX_RMS_MINUTES && check.rmsMetres <= MAX_RMS_METRES
+                && check.missed + check.extra <= MAX_MISMATCHED * check.tides;
+    }
+
+    private static void putName(ByteBuffer buf, String name) {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        buf.put((byte) b.length);
+        buf.put(b);
+    }
+}
@@ -0,0 +1,146 @@
+package com.palliser.nztides.build;
+
+import com.palliser.nztides.core.Constituents;
+import com.palliser.nztides.core.HarmonicModel;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Least squares fit of a harmonic model to a table of highs and lows.
+ *
+ * Each tide gives two equations: the model height equals the tide's height, and the
+ * model's rate of rise is zero there. The rate equations pin down the phases far
+ * better than the decimetre heights do on their own. Writing each constituent as
+ * a cos + b sin keeps the problem linear; the normal equations are solved by Cholesky.
+ */
+final class HarmonicFit {
+
+    /** 2015-07-01 00:00 UTC, the reference date of the LINZ constituent set */
+    static final int EPOCH = 1435708800;
+
+    private HarmonicFit() {
+    }
+
+    /**
+     * Every constituent Constituents knows about but M6. M6 runs at exactly three times
+     * the speed of M2, so at the highs and lows, which M2 sets, it is always at the same
+     * point of its cycle and they can barely tell it from M2. Fitted, it soaks up some of
+     * M2 and puts stands and false tides between the real ones.
+     */
+    static int[] fittedConstituents() {
+        int m6 = Constituents.index("M6");
+        int[] fitted = new int[Constituents.NAMES.length - 1];
+        for (int j = 0, k = 0; j < Constituents.NAMES.length; j++) {
+            if (j != m6)
+                fitted[k++] = j;
+        }
+        return fitted;
+    }
+
+    /** Fit the given constituents to tides first..last-1 of table */
+    static HarmonicModel fit(TideTable table, int first, int last, int[] constituents, int epoch) {
+        int nc = constituents.length;
+        int n = 1 + 2 * nc;
+        double[] ata = new double[n * n];
+        double[] atb = new double[n];
+        double[] row = new double[n];
+        double[] f = new double[nc];
+        double[] u = new double[nc];
+        double[] omega = new double[nc];
+        for (int j = 0; j < nc; j++)
+            omega[j] = Constituents.omega(constituents[j]);
+        //scale the rate equations so they are about as big as the height ones
+        double ratescale = 1 / Constituents.omega(Constituents.index("M2"));
+
+        int nodalday = Integer.MIN_VALUE;
+        for (int k = first; k < last; k++) {
+            int t = table.time(k);
+            int day = Math.floorDiv(t, 86400);
+            if (day != nodalday) {
+                nodalday = day;
+                Constituents.nodal(constituents, day * 86400 + 43200, f, u);
+            }
+            double dt = t - (double) epoch;
+
+            row[0] = 1;
+            for (int j = 0; j < nc; j++) {
+                double a = omega[j] * dt + u[j];
+                row[1 + 2 * j] = f[j] * Math.cos(a);
+                row[2 + 2 * j] = f[j] * Math.sin(a);
+            }
+            accumulate(ata, atb, row, table.height(k));
+
+            row[0] = 0;
+            for (int j = 0; j < nc; j++) {
+                double a = omega[j] * dt + u[j];
+                row[1 + 2 * j] = -f[j] * omega[j] * ratescale * Math.sin(a);
+                row[2 + 2 * j] = f[j] * omega[j] * ratescale * Math.cos(a);
+            }
+            accumulate(ata, atb, row, 0);
+        }
+
+        double[] x = solve(ata, atb, n);
+        double[] amps = new double[nc];
+        double[] phases = new double[nc];
+        for (int j = 0; j < nc; j++) {
+            double a = x[1 + 2 * j], b = x[2 + 2 * j];
+            amps[j] = Math.hypot(a, b);
+            phases[j] = Math.atan2(b, a);
+        }
+        return new HarmonicModel(epoch, x[0], constituents, amps, phases);
+    }
+
+    private static void accumulate(double[] ata, double[] atb, double[] row, double rhs) {
+        int n = row.length;
+        for (int i = 0; i < n; i++) {
+            double ri = row[i];
+            if (ri == 0)
+                continue;
+            atb[i] += ri * rhs;
+            for (int j = 0; j <= i; j++)
+                ata[i * n + j] += ri * row[j];
+        }
+    }
+
+    /**
+     * Solve the symmetric positive definite system held in the lower triangle of a.
+     * A tiny ridge keeps constituents the data can't separate from blowing up.
+     */
+    private static double[] solve(double[] a, double[] b, int n) {
+        double ridge = 0;
+        for (int i = 0; i < n; i++)
+            ridge += a[i * n + i];
+        ridge *= 1e-12 / n;
+        for (int i = 0; i < n; i++)
+            a[i * n + i] += ridge;
+
+        for (int j = 0; j < n; j++) {
+            double d = a[j * n + j];
+            for (int k = 0; k < j; k++)
+                d -= a[j * n + k] * a[j * n + k];
+            if (d <= 0)
+                throw new ArithmeticException("fit is singular");
+            d = Math.sqrt(d);
+            a[j * n + j] = d;
+            for (int i = j + 1; i < n; i++) {
+                double s = a[i * n + j];
+                for (int k = 0; k < j; k++)
+                    s -= a[i * n + k] * a[j * n + k];
+                a[i * n + j] = s / d;
+            }
+        }
+        double[] x = b.clone();
+        for (int i = 0; i < n; i++) {
+            double s = x[i];
+            for (int k = 0; k < i; k++)
+                s -= a[i * n + k] * x[k];
+            x[i] = s / a[i * n + i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double s = x[i];
+            for (int k = i + 1; k < n; k++)
+                s -= a[k * n + i] * x[k];
+            x[i] = s / a[i * n + i];
+        }
+        return x;
+    }
+}
@@ -0,0 +1,177 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.palliser.nztides.core.ZoneTable;
+
+/**
+ * Reader for the yearly tide prediction CSVs LINZ publishes for each port, eg
+ * <pre>
+ *   356,Akaroa,43°48'S,172°58'E
+ *   Based on constituent set with reference date:,15-Jan-2008
+ *   Local Std or Daylight Time,Tidal heights in metres.
+ *   1,We,1,2025,05:18,2.5,11:40,0.7,17:39,2.3,23:52,0.7
+ * </pre>
+ * The first line gives the station's number, name and position, which is sometimes
+ * to a tenth of a minute and sometimes missing the minutes sign.
+ * Each day's row gives day, weekday, month and year then up to four time, height
+ * pairs in New Zealand local time. Rows are picked apart where they sit in
+ * TideFileReader's buffer rather than with split and java.time, as there are a few
+ * hundred thousand of them.
+ */
+final class LinzCsv implements TideFormat {
+
+    static final LinzCsv FORMAT = new LinzCsv();
+
+    static final ZoneId NZ = ZoneId.of("Pacific/Auckland");
+
+    /** Degrees, any sign, minutes, optional ' then the hemisphere, eg 36°51'S or 172°44.1E */
+    private static final Pattern ANGLE = Pattern.compile("(\\d+)\\D+?(\\d+(?:\\.\\d*)?)'?\\s*([NSEW])");
+
+    /** Instants of the NZ offset changes from 1970 to 2100 and the offset (seconds) after each */
+    private static final long[] TRANSITIONS;
+    private static final int[] OFFSETS;
+
+    static {
+        ZoneRules rules = NZ.getRules();
+        List<ZoneOffsetTransition> found = new ArrayList<>();
+        Instant end = Instant.parse("2100-01-01T00:00:00Z");
+        ZoneOffsetTransition tr = rules.nextTransition(Instant.EPOCH);
+        while (tr != null && tr.getInstant().isBefore(end)) {
+            found.add(tr);
+            tr = rules.nextTransition(tr.getInstant());
+        }
+        TRANSITIONS = new long[found.size() + 1];
+        OFFSETS = new int[found.size() + 1];
+        TRANSITIONS[0] = Long.MIN_VALUE;
+        OFFSETS[0] = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+        for (int k = 0; k < found.size(); k++) {
+            TRANSITIONS[k + 1] = found.get(k).getInstant().getEpochSecond();
+            OFFSETS[k + 1] = found.get(k).getOffsetAfter().getTotalSeconds();
+        }
+    }
+
+    private LinzCsv() {
+    }
+
+    /**
+     * The NZ offsets used to convert the tides, as a table running from the change in
+     * force at from to the last change before 2038, when int seconds run out.
+     */
+    static ZoneTable zone(int from) {
+        int first = 0;
+        while (first + 1 < TRANSITIONS.length && TRANSITIONS[first + 1] <= from)
+            first++;
+        int last = first;
+        while (last + 1 < TRANSITIONS.length && TRANSITIONS[last + 1] <= Integer.MAX_VALUE)
+            last++;
+        int[] transitions = new int[last - first + 1];
+        int[] offsets = new int[transitions.length];
+        transitions[0] = Integer.MIN_VALUE;
+        offsets[0] = OFFSETS[first];
+        for (int k = 1; k < transitions.length; k++) {
+            transitions[k] = (int) TRANSITIONS[first + k];
+            offsets[k] = OFFSETS[first + k];
+        }
+        int raw = NZ.getRules().getStandardOffset(Instant.ofEpochSecond(from)).getTotalSeconds();
+        return new ZoneTable(NZ.getId(), raw, transitions, offsets);
+    }
+
+    @Override
+    public boolean matches(TideFileReader.Line first) {
+        return first.contains(',');
+    }
+
+    @Override
+    public void header(String file, String line, TideTableBuilder tides, StringBuilder report) {
+        if (tides.hasPosition())
+            return;//from an earlier year
+        String[] f = line.split(",");
+        if (f.length >= 4) {
+            double lat = parseAngle(f[2].trim());
+            double lon = parseAngle(f[3].trim());
+            if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                tides.setPosition(lat, lon);
+                return;
+            }
+        }
+        report.append("no station position in '").append(file).append("'\n");
+    }
+
+    @Override
+    public void row(String file, TideFileReader.Line row, TideTableBuilder tides) throws IOException {
+        int day = row.next(',') ? row.integer() : -1;
+        row.next(',');//weekday
+        int mon = row.next(',') ? row.integer() : -1;
+        int yr = row.next(',') ? row.integer() : -1;
+        if (day < 0 || mon < 0 || yr < 0)
+            throw new IOException("bad date in " + file + ": " + row);
+        long days = daysFromCivil(yr, mon, day);
+        //the change in force is found once for the day and stepped on from for each tide
+        int change = change(days * 86400);
+        while (row.next(',')) {
+            int mins = row.minutes();
+            if (mins < 0 || !row.next(','))
+                break;
+            int decimetres = row.decimetres();
+            if (decimetres == TideFileReader.Line.NOT_A_NUMBER)
+                break;
+            long local = days * 86400 + mins * 60;
+            while (change + 1 < TRANSITIONS.length && local - OFFSETS[change + 1] >= TRANSITIONS[change + 1])
+                change++;
+            tides.add((int) (local - OFFSETS[change]), decimetres);
+        }
+    }
+
+    /** An angle like 36°51'S in degrees, north and east positive, or NaN if it can't be read */
+    static double parseAngle(String s) {
+        Matcher m = ANGLE.matcher(s);
+        if (!m.matches())
+            return Double.NaN;
+        double deg = Integer.parseInt(m.group(1)) + Double.parseDouble(m.group(2)) / 60;
+        char hemisphere = m.group(3).charAt(0);
+        return hemisphere == 'S' || hemisphere == 'W' ? -deg : deg;
+    }
+
+    /** Days since 1970 of a date, see http://howardhinnant.github.io/date_algorithms.html */
+    static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = (int) (y - era * 400);
+        int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Seconds since 1970 of a New Zealand local time, given as seconds since 1970 on a
+     * UTC clock. Times in the hour repeated when daylight saving ends are taken as
+     * standard time, and times in the hour skipped when it starts are read with the
+     * standard offset, as pytz's is_dst=False did. That works out as using the offset
+     * of the last change that the time, read with the new offset, is after.
+     */
+    static int toEpoch(long local) {
+        return (int) (local - OFFSETS[change(local)]);
+    }
+
+    /** Index in TRANSITIONS of the change in force at local, as toEpoch reads it */
+    private static int change(long local) {
+        int lo = 0, hi = TRANSITIONS.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (local - OFFSETS[mid] >= TRANSITIONS[mid])
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+}
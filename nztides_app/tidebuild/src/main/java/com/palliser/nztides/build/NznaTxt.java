@@ -0,0 +1,84 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+import java.text.Normalizer;
+
+/**
+ * Reader for the fixed width tide tables in tidelookup/txtfiles, as once converted by
+ * binaryise_txt_tidetables.py, eg
+ * <pre>
+ *   356Akaroa
+ *   Based on data from 15-Jan-2008
+ *   Local Std Time, tidal heights in metres.
+ *    1  Mo        724 0530  0.7 1142  2.5 1800  0.7 9999  9.9
+ * </pre>
+ * The first line gives the station's number and name but no position. Each day's row
+ * gives day, weekday, then month and two digit year run together, then up to four
+ * time, height pairs in New Zealand standard time all year round, the day padded out
+ * with 9999 9.9 if it has fewer tides.
+ */
+final class NznaTxt implements TideFormat {
+
+    static final NznaTxt FORMAT = new NznaTxt();
+
+    /** NZST, the tables take no account of daylight saving */
+    private static final int STANDARD_OFFSET = 12 * 3600;
+    /** The time given for a tide that isn't there */
+    private static final int NO_TIDE = 9999;
+
+    private NznaTxt() {
+    }
+
+    @Override
+    public boolean matches(TideFileReader.Line first) {
+        return first.startsWithDigit() && !first.contains(',');
+    }
+
+    /**
+     * Reports the file if the name in it isn't the one its file name starts with, after
+     * any station number and give or take spaces, underscores and macrons.
+     */
+    @Override
+    public void header(String file, String line, TideTableBuilder tides, StringBuilder report) {
+        String name = line.substring(digits(line)).trim();
+        if (name.isEmpty() || !squash(file.substring(digits(file))).startsWith(squash(name)))
+            report.append('\'').append(file).append("' is for ").append(name).append('\n');
+    }
+
+    /** Number of digits s starts with */
+    private static int digits(String s) {
+        int k = 0;
+        while (k < s.length() && Character.isDigit(s.charAt(k)))
+            k++;
+        return k;
+    }
+
+    @Override
+    public void row(String file, TideFileReader.Line row, TideTableBuilder tides) throws IOException {
+        int day = row.next(' ') ? row.integer() : -1;
+        row.next(' ');//weekday
+        int monthyear = row.next(' ') ? row.integer() : -1;
+        if (day < 0 || monthyear < 100)
+            throw new IOException("bad date in " + file + ": " + row);
+        long days = LinzCsv.daysFromCivil(2000 + monthyear % 100, monthyear / 100, day);
+        while (row.next(' ') && row.integer() != NO_TIDE) {
+            int mins = row.minutes();
+            if (mins < 0 || !row.next(' '))
+                break;
+            int decimetres = row.decimetres();
+            if (decimetres == TideFileReader.Line.NOT_A_NUMBER)
+                break;
+            tides.add((int) (days * 86400 + mins * 60 - STANDARD_OFFSET), decimetres);
+        }
+    }
+
+    /** s with its macrons, or any other accents, taken off, eg "Whakatāne" to "Whakatane" */
+    static String plain(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    /** plain(s) in lower case without spaces or punctuation, for comparing names */
+    private static String squash(String s) {
+        return plain(s).replaceAll("[^\\p{Alnum}]", "").toLowerCase();
+    }
+}
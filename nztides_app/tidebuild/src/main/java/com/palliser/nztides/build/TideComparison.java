@@ -0,0 +1,81 @@
+package com.palliser.nztides.build;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * How far predicted highs and lows are from a table's. Each tide in the table is
+ * paired with the nearest predicted tide of the same kind, high or low, if there is
+ * one within MAX_OFFSET; the errors are over those pairs. A table tide with no pair is
+ * missed and a predicted tide no table tide pairs with is extra. Both highs of the odd
+ * double high in a table can pair with one predicted high, so they count as neither.
+ */
+final class TideComparison {
+
+    /** Furthest apart a predicted and table tide can be and still be the same tide */
+    static final int MAX_OFFSET = 3 * 3600;
+
+    /** Number of table tides compared */
+    final int tides;
+    final int missed;
+    final int extra;
+    final double rmsMinutes;
+    final double rmsMetres;
+    final double maxMinutes;
+
+    private TideComparison(int tides, int missed, int extra, double rmsMinutes, double rmsMetres,
+            double maxMinutes) {
+        this.tides = tides;
+        this.missed = missed;
+        this.extra = extra;
+        this.rmsMinutes = rmsMinutes;
+        this.rmsMetres = rmsMetres;
+        this.maxMinutes = maxMinutes;
+    }
+
+    /** Compare the tides of table from from up to to with those predicted for then */
+    static TideComparison compare(TideTable table, TideTable predicted, int from, int to) {
+        int first = table.indexAfter(from - 1);
+        int last = table.indexAfter(to - 1);
+        int missed = 0;
+        double minutes = 0, metres = 0, max = 0;
+        boolean[] paired = new boolean[predicted.size()];
+        for (int k = first; k < last; k++) {
+            int p = nearest(predicted, table.time(k), table.isHigh(k));
+            if (p < 0) {
+                missed++;
+                continue;
+            }
+            paired[p] = true;
+            double dt = (predicted.time(p) - table.time(k)) / 60.0;
+            double dh = predicted.height(p) - table.height(k);
+            minutes += dt * dt;
+            metres += dh * dh;
+            max = Math.max(max, Math.abs(dt));
+        }
+        int extra = 0;
+        for (int p = 0; p < predicted.size(); p++) {
+            if (!paired[p] && predicted.time(p) >= from && predicted.time(p) < to)
+                extra++;
+        }
+        int n = Math.max(1, last - first - missed);
+        return new TideComparison(last - first, missed, extra, Math.sqrt(minutes / n), Math.sqrt(metres / n), max);
+    }
+
+    /** Index of the tide of the given kind in table nearest secs, -1 if none is within MAX_OFFSET */
+    private static int nearest(TideTable table, int secs, boolean high) {
+        int best = -1;
+        for (int k = Math.max(0, table.indexAfter(secs - MAX_OFFSET - 1)); k < table.size()
+                && table.time(k) <= secs + MAX_OFFSET; k++) {
+            if (table.isHigh(k) == high
+                    && (best < 0 || Math.abs(table.time(k) - secs) < Math.abs(table.time(best) - secs)))
+                best = k;
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d tides, %d missed, %d extra, rms %.1f min %.3f m, max %.0f min",
+                tides, missed, extra, rmsMinutes, rmsMetres, maxMinutes);
+    }
+}
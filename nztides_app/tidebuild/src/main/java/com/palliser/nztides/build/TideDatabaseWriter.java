@@ -0,0 +1,125 @@
+package com.palliser.nztides.build;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+import com.palliser.nztides.core.ZoneTable;
+
+/**
+ * Writes tide tables in the tides.tdb layout described in TideDatabase.
+ */
+final class TideDatabaseWriter {
+
+    private TideDatabaseWriter() {
+    }
+
+    /**
+     * The database holding tables[k] under names[k], in that order, with station
+     * positions lat[k], lon[k] in degrees (NaN if not known) and the tides to be shown
+     * in zone.
+     */
+    static byte[] encode(List<String> names, List<TideTable> tables, double[] lat, double[] lon, ZoneTable zone) {
+        byte[][] utf8 = new byte[names.size()][];
+        int offset = 8;
+        for (int p = 0; p < utf8.length; p++) {
+            utf8[p] = names.get(p).getBytes(StandardCharsets.UTF_8);
+            if (utf8[p].length > 0xff)
+                throw new IllegalArgumentException("port name too long: " + names.get(p));
+            offset += 1 + utf8[p].length + 24;
+        }
+        byte[] zoneid = zone.id().getBytes(StandardCharsets.US_ASCII);
+        offset += 1 + zoneid.length + 4 + 2 + 8 * zone.size();
+        int[][] segments = new int[tables.size()][];
+        int[] segmentoffsets = new int[tables.size()];
+        for (int p = 0; p < segments.length; p++) {
+            segments[p] = monthStarts(tables.get(p));
+            if (segments[p].length > 0xffff)
+                throw new IllegalArgumentException(names.get(p) + " has too many months of tides");
+            segmentoffsets[p] = offset;
+            offset += 2 + segments[p].length * TideDatabase.SEGMENT_SIZE;
+        }
+        int records = 0;
+        for (TideTable table : tables)
+            records += table.size();
+
+        ByteBuffer buf = ByteBuffer.allocate(offset + records * TideDatabase.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(TideDatabase.MAGIC);
+        buf.putShort((short) TideDatabase.VERSION);
+        buf.putShort((short) tables.size());
+        for (int p = 0; p < utf8.length; p++) {
+            TideTable table = tables.get(p);
+            buf.put((byte) utf8[p].length);
+            buf.put(utf8[p]);
+            buf.putInt(table.size() > 0 ? table.firstTime() : 0);
+            buf.putInt(offset);
+            buf.putInt(table.size());
+            buf.putInt(microdegrees(lat[p], lon[p]));
+            buf.putInt(microdegrees(lon[p], lat[p]));
+            buf.putInt(segmentoffsets[p]);
+            offset += table.size() * TideDatabase.RECORD_SIZE;
+        }
+        buf.put((byte) zoneid.length);
+        buf.put(zoneid);
+        buf.putInt(zone.rawOffset());
+        buf.putShort((short) zone.size());
+        for (int k = 0; k < zone.size(); k++) {
+            buf.putInt(zone.transition(k));
+            buf.putInt(zone.offsetAt(k));
+        }
+        for (int p = 0; p < utf8.length; p++) {
+            TideTable table = tables.get(p);
+            buf.putShort((short) segments[p].length);
+            for (int k : segments[p]) {
+                buf.putInt(table.time(k));
+                buf.putInt(k);
+            }
+        }
+
+        for (int p = 0; p < utf8.length; p++) {
+            TideTable table = tables.get(p);
+            for (int k = 0; k < table.size(); k++) {
+                if (table.time(k) % 60 != 0)
+                    throw new IllegalArgumentException(names.get(p) + " has a tide at " + table.time(k)
+                            + ", not on a whole minute");
+                int minutes = k == 0 ? 0 : (table.time(k) - table.time(k - 1)) / 60;
+                if (minutes < 0 || minutes > 0xffff)
+                    throw new IllegalArgumentException(names.get(p) + " has tides " + minutes + " minutes apart");
+                buf.putShort((short) minutes);
+                buf.put((byte) (table.heightCm(k) * 10 / TideTable.HEIGHT_SCALE));
+            }
+        }
+        return buf.array();
+    }
+
+    /** Index of the first tide of each calendar month (UTC) in table */
+    private static int[] monthStarts(TideTable table) {
+        int[] starts = new int[table.size()];
+        int n = 0;
+        long nextmonth = Long.MIN_VALUE;
+        for (int k = 0; k < table.size(); k++) {
+            if (table.time(k) >= nextmonth) {
+                starts[n++] = k;
+                //the date is only worked out once a month rather than for every tide
+                LocalDate month = Instant.ofEpochSecond(table.time(k)).atOffset(ZoneOffset.UTC).toLocalDate()
+                        .withDayOfMonth(1);
+                nextmonth = month.plusMonths(1).toEpochDay() * 86400;
+            }
+        }
+        return Arrays.copyOf(starts, n);
+    }
+
+    /** Angle a in millionths of a degree, or Integer.MIN_VALUE if a or the other half of the position is unknown */
+    private static int microdegrees(double a, double other) {
+        if (Double.isNaN(a) || Double.isNaN(other))
+            return Integer.MIN_VALUE;
+        return (int) Math.round(a * 1e6);
+    }
+}
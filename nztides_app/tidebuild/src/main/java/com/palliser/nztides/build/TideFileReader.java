@@ -0,0 +1,268 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Reads a tide prediction file of any TideFormat, LINZ CSV or NZNA txt, picked from
+ * its first line.
+ *
+ * The file is streamed through a fixed buffer a line at a time and data rows are
+ * parsed where they sit in it, numbers straight from the digits, so no String is
+ * made for a row or a field. Only the first line, which has the port's name and
+ * position, is decoded to text: as utf-8 less any byte order mark, or as
+ * windows-1252 if it isn't valid utf-8, as some years have been published that
+ * way. The rows are plain ascii either way. A blank line after the rows ends the
+ * table.
+ *
+ * A reader reuses its buffer so isn't thread safe; use one per thread.
+ */
+public final class TideFileReader {
+
+    private static final TideFormat[] FORMATS = {LinzCsv.FORMAT, NznaTxt.FORMAT};
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private final byte[] buf = new byte[1 << 16];
+    private final Line line = new Line(buf);
+
+    /** The tides in file */
+    public TideTable read(Path file) throws IOException {
+        TideTableBuilder tides = new TideTableBuilder();
+        read(file, tides, new StringBuilder());
+        return tides.build();
+    }
+
+    /** The tides in a file being read from in, named name */
+    public TideTable read(InputStream in, String name) throws IOException {
+        TideTableBuilder tides = new TideTableBuilder();
+        read(in, name, tides, new StringBuilder());
+        return tides.build();
+    }
+
+    /** Append the tides in file to tides, adding anything worth mentioning to report */
+    void read(Path file, TideTableBuilder tides, StringBuilder report) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            read(in, file.getFileName().toString(), tides, report);
+        }
+    }
+
+    void read(InputStream in, String name, TideTableBuilder tides, StringBuilder report) throws IOException {
+        TideFormat format = null;
+        boolean rows = false;
+        int len = 0;
+        int start = 0;
+        int scanned = 0;
+        boolean eof = false;
+        while (!eof || start < len) {
+            int nl = scanned;
+            while (nl < len && buf[nl] != '\n')
+                nl++;
+            if (nl == len && !eof) {
+                //move the part line to the front and read more after it
+                System.arraycopy(buf, start, buf, 0, len - start);
+                len -= start;
+                scanned = len;
+                start = 0;
+                if (len == buf.length)
+                    throw new IOException("line too long in " + name);
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0)
+                    eof = true;
+                else
+                    len += n;
+                continue;
+            }
+            line.set(start, nl);
+            start = Math.min(nl + 1, len);
+            scanned = start;
+
+            if (format == null) {
+                line.skipByteOrderMark();
+                for (TideFormat f : FORMATS) {
+                    if (f.matches(line)) {
+                        format = f;
+                        break;
+                    }
+                }
+                if (format == null)
+                    throw new IOException("'" + name + "' is neither a LINZ csv nor an NZNA txt file");
+                format.header(name, decode(line, name, report), tides, report);
+            } else if (line.isEmpty()) {
+                if (rows)
+                    break;
+            } else if (line.startsWithDigit()) {
+                format.row(name, line, tides);
+                rows = true;
+            }
+        }
+    }
+
+    private static String decode(Line line, String name, StringBuilder report) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .decode(ByteBuffer.wrap(line.buf, line.pos, line.end - line.pos)).toString();
+        } catch (CharacterCodingException e) {
+            report.append("not utf-8 in '").append(name).append("', reading it as windows-1252\n");
+            return new String(line.buf, line.pos, line.end - line.pos, WINDOWS_1252);
+        }
+    }
+
+    /**
+     * A line of the file in the reader's buffer, trimmed, read a field at a time. The
+     * current field is [from, to); integer(), minutes() and decimetres() parse it.
+     */
+    static final class Line {
+
+        /** What decimetres() gives for a field that isn't a number */
+        static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+        final byte[] buf;
+        private int start;
+        int pos;
+        int end;
+        private int from;
+        private int to;
+
+        Line(byte[] buf) {
+            this.buf = buf;
+        }
+
+        void set(int start, int end) {
+            while (start < end && (buf[start] & 0xff) <= ' ')
+                start++;
+            while (end > start && (buf[end - 1] & 0xff) <= ' ')
+                end--;
+            this.start = start;
+            pos = start;
+            this.end = end;
+            from = to = start;
+        }
+
+        void skipByteOrderMark() {
+            if (end - pos >= 3 && buf[pos] == (byte) 0xef && buf[pos + 1] == (byte) 0xbb && buf[pos + 2] == (byte) 0xbf)
+                pos += 3;
+        }
+
+        boolean isEmpty() {
+            return pos >= end;
+        }
+
+        boolean startsWithDigit() {
+            return pos < end && buf[pos] >= '0' && buf[pos] <= '9';
+        }
+
+        boolean contains(char c) {
+            for (int k = pos; k < end; k++) {
+                if (buf[k] == c)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Move on to the next field, which runs up to sep or the end of the line. A sep
+         * of ' ' takes any run of spaces as one. False if there are no fields left.
+         */
+        boolean next(char sep) {
+            if (sep == ' ') {
+                while (pos < end && buf[pos] == ' ')
+                    pos++;
+                if (pos == end)
+                    return false;
+            }
+            if (pos > end)
+                return false;
+            from = pos;
+            while (pos < end && buf[pos] != sep)
+                pos++;
+            to = pos;
+            pos++;//past sep, or past the end if there wasn't one
+            return true;
+        }
+
+        /** The field's digits as a number, -1 if it's empty or has anything else */
+        int integer() {
+            if (from == to)
+                return -1;
+            int v = 0;
+            for (int k = from; k < to; k++) {
+                int d = buf[k] - '0';
+                if (d < 0 || d > 9)
+                    return -1;
+                v = 10 * v + d;
+            }
+            return v;
+        }
+
+        /** Minutes past midnight of a time like 05:18 or 0518, -1 if it isn't one */
+        int minutes() {
+            int v = 0;
+            int hours = -1;
+            int digits = 0;
+            for (int k = from; k < to; k++) {
+                int d = buf[k] - '0';
+                if (buf[k] == ':' && hours < 0 && digits > 0) {
+                    hours = v;
+                    v = 0;
+                    digits = 0;
+                } else if (d < 0 || d > 9) {
+                    return -1;
+                } else {
+                    v = 10 * v + d;
+                    digits++;
+                }
+            }
+            if (digits == 0)
+                return -1;
+            return hours >= 0 ? 60 * hours + v : 60 * (v / 100) + v % 100;
+        }
+
+        /** A height like 2.5 or -0.1 metres in decimetres to the nearest, or NOT_A_NUMBER */
+        int decimetres() {
+            int k = from;
+            boolean negative = k < to && buf[k] == '-';
+            if (k < to && (buf[k] == '-' || buf[k] == '+'))
+                k++;
+            long v = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (; k < to; k++) {
+                int d = buf[k] - '0';
+                if (buf[k] == '.' && decimals < 0) {
+                    decimals = 0;
+                } else if (d < 0 || d > 9 || digits > 15) {
+                    return NOT_A_NUMBER;
+                } else {
+                    v = 10 * v + d;
+                    digits++;
+                    if (decimals >= 0)
+                        decimals++;
+                }
+            }
+            if (digits == 0)
+                return NOT_A_NUMBER;
+            if (negative)
+                v = -v;
+            if (decimals <= 1)
+                return (int) (decimals == 1 ? v : 10 * v);
+            //more than one place: round half up, as Math.round does
+            long scale = 1;
+            for (int d = 1; d < decimals; d++)
+                scale *= 10;
+            return (int) Math.floorDiv(2 * v + scale, 2 * scale);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
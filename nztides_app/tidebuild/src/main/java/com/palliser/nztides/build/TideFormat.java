@@ -0,0 +1,20 @@
+package com.palliser.nztides.build;
+
+import java.io.IOException;
+
+/**
+ * A layout of tide prediction file TideFileReader can read, LinzCsv or NznaTxt. The
+ * reader picks the format from a file's first line, hands it that line decoded, then
+ * hands it each data row as bytes to parse in place.
+ */
+interface TideFormat {
+
+    /** True if the first line of a file, less any byte order mark, is this format's */
+    boolean matches(TideFileReader.Line first);
+
+    /** Take what's wanted from the first line of file, reporting anything amiss */
+    void header(String file, String line, TideTableBuilder tides, StringBuilder report);
+
+    /** Append the tides in a data row, a line starting with a digit */
+    void row(String file, TideFileReader.Line row, TideTableBuilder tides) throws IOException;
+}
@@ -0,0 +1,64 @@
+package com.palliser.nztides.build;
+
+import java.util.Arrays;
+
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * Growable list of tides that becomes a TideTable once a port has been read, along
+ * with where the port's tide station is.
+ */
+final class TideTableBuilder {
+
+    private int[] times = new int[4 * 366 * 3];
+    private short[] heights = new short[times.length];
+    private int size;
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
+
+    /** Add a tide at secs since 1970 with a height in decimetres, as LINZ gives them */
+    void add(int secs, int decimetres) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            heights = Arrays.copyOf(heights, 2 * size);
+        }
+        times[size] = secs;
+        heights[size] = (short) (decimetres * TideTable.HEIGHT_SCALE / 10);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int time(int k) {
+        return times[k];
+    }
+
+    /** Position of the tide station in degrees, north and east positive */
+    void setPosition(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    boolean hasPosition() {
+        return !Double.isNaN(latitude);
+    }
+
+    double latitude() {
+        return latitude;
+    }
+
+    double longitude() {
+        return longitude;
+    }
+
+    /** Drop everything after the first n tides */
+    void truncate(int n) {
+        size = n;
+    }
+
+    TideTable build() {
+        return new TideTable(Arrays.copyOf(times, size), Arrays.copyOf(heights, size));
+    }
+}
@@ -0,0 +1,81 @@
+package com.palliser.nztides.build;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.palliser.nztides.core.ConstituentDatabase;
+import com.palliser.nztides.core.HarmonicModel;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+
+/**
+ * The shipped constituents.tcon against the shipped tides.tdb: the highs and lows
+ * predicted for each port over its table are checked against the table's, and those
+ * for the years after it against each other.
+ */
+public class PredictedTidesTest {
+
+    /** 2028-01-01 00:00 UTC, after the last of the tables */
+    private static final int AFTER_TABLES = 1830297600;
+
+    private static TideDatabase db;
+    private static ConstituentDatabase cdb;
+
+    @BeforeClass
+    public static void open() throws IOException {
+        File assets = new File(System.getProperty("nztides.assets", "../app/src/main/assets"));
+        try (FileChannel ch = FileChannel.open(new File(assets, TideDatabase.ASSET_NAME).toPath(),
+                StandardOpenOption.READ)) {
+            db = TideDatabase.map(ch, 0, ch.size());
+        }
+        try (FileChannel ch = FileChannel.open(new File(assets, ConstituentDatabase.ASSET_NAME).toPath(),
+                StandardOpenOption.READ)) {
+            cdb = ConstituentDatabase.map(ch, 0, ch.size());
+        }
+    }
+
+    @Test
+    public void predictionsMatchTheTables() {
+        for (int p = 0; p < cdb.numPorts(); p++) {
+            TideTable table = db.table(db.portIndex(cdb.portName(p)));
+            HarmonicModel model = cdb.model(p);
+            TideTable predicted = model.extremes(table.firstTime() - TideComparison.MAX_OFFSET,
+                    table.lastTime() + TideComparison.MAX_OFFSET);
+            TideComparison check = TideComparison.compare(table, predicted, table.firstTime(), table.lastTime() + 1);
+            assertTrue(cdb.portName(p) + ": " + check, FitConstituents.goodEnough(check));
+        }
+    }
+
+    @Test
+    public void highsAndLowsAlternateAfterTheTables() {
+        for (int p = 0; p < cdb.numPorts(); p++) {
+            TideTable predicted = cdb.model(p).extremes(AFTER_TABLES, AFTER_TABLES + 365 * 86400);
+            //a year of semidiurnal tides is about 1410, diurnal about 705
+            assertTrue(cdb.portName(p) + ": " + predicted.size() + " tides", predicted.size() > 700
+                    && predicted.size() < 1420);
+            for (int k = 2; k < predicted.size(); k++) {
+                float rise = predicted.height(k) - predicted.height(k - 1);
+                float last = predicted.height(k - 1) - predicted.height(k - 2);
+                assertTrue(cdb.portName(p) + " at " + predicted.time(k), rise * last < 0);
+            }
+        }
+    }
+
+    @Test
+    public void portsLeftOutFailTheCheck() {
+        for (int p = 0; p < db.numPorts(); p++) {
+            if (cdb.portIndex(db.portName(p)) < 0) {
+                TideComparison check = FitConstituents.check(db.table(p), HarmonicFit.fittedConstituents());
+                assertFalse(db.portName(p) + ": " + check, FitConstituents.goodEnough(check));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.palliser.nztides.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Reader for the harmonic constituents of every port (constituents.tcon).
+ *
+ * The file is little endian and laid out as
+ * <pre>
+ *   "NZTC"                 magic
+ *   u16 version
+ *   u16 number of ports
+ *   i32 epoch the phases are relative to (seconds since 1970)
+ *   u8  number of constituents
+ *   for each constituent: u8 length, ascii name
+ *   for each port:
+ *     u8 length, utf-8 port name
+ *     u8 minutes and u8 centimetres its predicted highs and lows were out by (rms)
+ *        against a year of its table that was left out of the fit
+ *     i16 mean level above chart datum in millimetres
+ *     for each constituent:
+ *       u16 amplitude in millimetres
+ *       u16 phase in hundredths of a degree
+ * </pre>
+ * which comes to about 130 bytes a port against the 13k or so of its tide table.
+ * Ports whose tides can't be predicted well enough from constituents are left out.
+ */
+public final class ConstituentDatabase {
+
+    public static final String ASSET_NAME = "constituents.tcon";
+    public static final int MAGIC = 'N' | 'Z' << 8 | 'T' << 16 | 'C' << 24;
+    public static final int VERSION = 2;
+
+    //StandardCharsets is API 19
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buf;
+    private final int epoch;
+    private final int[] constituents;
+    private final String[] names;
+    private final int[] offsets;
+    private final HashMap<String, Integer> index = new HashMap<String, Integer>();
+
+    /** Read the constituents from buf, which is used as is rather than copied. */
+    public ConstituentDatabase(ByteBuffer buffer) throws IOException {
+        long started = TideMetrics.PARSE.start();
+        buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(0);
+        if (buf.remaining() < 13 || buf.getInt() != MAGIC)
+            throw new IOException("not a constituent database");
+        int version = buf.getShort() & 0xffff;
+        if (version != VERSION)
+            throw new IOException("unsupported constituent database version " + version);
+        int nports = buf.getShort() & 0xffff;
+        epoch = buf.getInt();
+
+        constituents = new int[buf.get() & 0xff];
+        for (int j = 0; j < constituents.length; j++) {
+            String name = readName();
+            constituents[j] = Constituents.index(name);
+            if (constituents[j] < 0)
+                throw new IOException("unknown constituent " + name);
+        }
+
+        names = new String[nports];
+        offsets = new int[nports];
+        int record = 2 + 2 + 4 * constituents.length;
+        for (int p = 0; p < nports; p++) {
+            names[p] = readName();
+            offsets[p] = buf.position();
+            if (buf.remaining() < record)
+                throw new IOException("constituent database is truncated");
+            buf.position(buf.position() + record);
+            index.put(names[p], p);
+        }
+        TideMetrics.PARSE.stop(started);
+    }
+
+    /** Map length bytes of channel starting at offset and read the constituents from them */
+    public static ConstituentDatabase map(FileChannel channel, long offset, long length) throws IOException {
+        return new ConstituentDatabase(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    private String readName() throws IOException {
+        int len = buf.get() & 0xff;
+        if (buf.remaining() < len)
+            throw new IOException("constituent database is truncated");
+        byte[] name = new byte[len];
+        buf.get(name);
+        return new String(name, UTF_8);
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    public int numPorts() {
+        return names.length;
+    }
+
+    public String portName(int port) {
+        return names[port];
+    }
+
+    /** Index of the named port, or -1 if it isn't in the database */
+    public int portIndex(String name) {
+        Integer p = index.get(name);
+        return p == null ? -1 : p;
+    }
+
+    /** Minutes the port's predicted highs and lows were out by (rms) when it was fitted */
+    public int minutesOut(int port) {
+        return buf.get(offsets[port]) & 0xff;
+    }
+
+    /** Centimetres the port's predicted highs and lows were out by (rms) when it was fitted */
+    public int centimetresOut(int port) {
+        return buf.get(offsets[port] + 1) & 0xff;
+    }
+
+    /** The harmonic model of the given port, leaving out constituents it doesn't have */
+    public HarmonicModel model(int port) {
+        int pos = offsets[port] + 2;
+        double z0 = buf.getShort(pos) / 1000.0;
+        pos += 2;
+        int n = 0;
+        for (int j = 0; j < constituents.length; j++) {
+            if (buf.getShort(pos + 4 * j) != 0)
+                n++;
+        }
+        int[] which = new int[n];
+        double[] amps = new double[n];
+        double[] phases = new double[n];
+        n = 0;
+        for (int j = 0; j < constituents.length; j++, pos += 4) {
+            int amp = buf.getShort(pos) & 0xffff;
+            if (amp == 0)
+                continue;
+            which[n] = constituents[j];
+            amps[n] = amp / 1000.0;
+            phases[n] = Math.toRadians((buf.getShort(pos + 2) & 0xffff) / 100.0);
+            n++;
+        }
+        return new HarmonicModel(epoch, z0, which, amps, phases);
+    }
+
+    /** The harmonic model of the named port */
+    public HarmonicModel model(String name) throws IOException {
+        int p = portIndex(name);
+        if (p < 0)
+            throw new IOException("no constituents for " + name);
+        return model(p);
+    }
+}
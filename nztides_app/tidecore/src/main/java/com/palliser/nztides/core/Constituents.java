@@ -0,0 +1,120 @@
+package com.palliser.nztides.core;
+
+/**
+ * The tidal constituents the harmonic model knows about: their names, speeds and
+ * how the 18.6 year lunar nodal cycle modulates them.
+ *
+ * Nodal corrections follow the simplified formulas in the IHO/Schureman tables,
+ * with the same factor used for constituents of the same family.
+ */
+public final class Constituents {
+
+    /** Kinds of nodal modulation */
+    static final int NODAL_NONE = 0, NODAL_M2 = 1, NODAL_O1 = 2, NODAL_K1 = 3, NODAL_K2 = 4,
+            NODAL_M2_SQUARED = 5, NODAL_M2_CUBED = 6, NODAL_MM = 7, NODAL_MF = 8, NODAL_M2K1 = 9;
+
+    public static final String[] NAMES = {
+            "SA", "SSA", "MM", "MSF", "MF",
+            "2Q1", "Q1", "RHO1", "O1", "P1", "K1", "J1", "OO1",
+            "2N2", "MU2", "N2", "NU2", "M2", "L2", "T2", "S2", "K2",
+            "MO3", "M3", "MK3", "MN4", "M4", "MS4", "S4", "M6"};
+
+    /** Speeds in degrees per hour */
+    static final double[] SPEEDS = {
+            0.0410686, 0.0821373, 0.5443747, 1.0158958, 1.0980331,
+            12.8542862, 13.3986609, 13.4715145, 13.9430356, 14.9589314, 15.0410686, 15.5854433, 16.1391017,
+            27.8953548, 27.9682084, 28.4397295, 28.5125831, 28.9841042, 29.5284789, 29.9589333, 30.0000000, 30.0821373,
+            42.9271398, 43.4761563, 44.0251729, 57.4238337, 57.9682084, 58.9841042, 60.0000000, 86.9523127};
+
+    static final int[] NODAL = {
+            NODAL_NONE, NODAL_NONE, NODAL_MM, NODAL_M2, NODAL_MF,
+            NODAL_O1, NODAL_O1, NODAL_O1, NODAL_O1, NODAL_NONE, NODAL_K1, NODAL_K1, NODAL_MF,
+            NODAL_M2, NODAL_M2, NODAL_M2, NODAL_M2, NODAL_M2, NODAL_M2, NODAL_NONE, NODAL_NONE, NODAL_K2,
+            NODAL_M2, NODAL_M2_CUBED, NODAL_M2K1, NODAL_M2_SQUARED, NODAL_M2_SQUARED, NODAL_M2, NODAL_NONE, NODAL_M2_CUBED};
+
+    /** 2000-01-01 12:00 UTC, the epoch for the lunar node longitude */
+    private static final int J2000 = 946728000;
+
+    private Constituents() {
+    }
+
+    /** Index of the named constituent, or -1 */
+    public static int index(String name) {
+        for (int k = 0; k < NAMES.length; k++) {
+            if (NAMES[k].equals(name))
+                return k;
+        }
+        return -1;
+    }
+
+    /** Speed of constituent k in radians per second */
+    public static double omega(int k) {
+        return Math.toRadians(SPEEDS[k]) / 3600;
+    }
+
+    /**
+     * Nodal amplitude factors f and phase corrections u (radians) for each of the
+     * given constituents at time secs.
+     */
+    public static void nodal(int[] constituents, int secs, double[] f, double[] u) {
+        double n = Math.toRadians(125.04452 - 0.0529538083 * ((secs - (double) J2000) / 86400));
+        double cn = Math.cos(n), c2n = Math.cos(2 * n);
+        double sn = Math.sin(n), s2n = Math.sin(2 * n), s3n = Math.sin(3 * n);
+
+        double fm2 = 1.0004 - 0.0373 * cn + 0.0002 * c2n;
+        double um2 = Math.toRadians(-2.14 * sn);
+        double fo1 = 1.0089 + 0.1871 * cn - 0.0147 * c2n;
+        double uo1 = Math.toRadians(10.80 * sn - 1.34 * s2n + 0.19 * s3n);
+        double fk1 = 1.0060 + 0.1150 * cn - 0.0088 * c2n;
+        double uk1 = Math.toRadians(-8.86 * sn + 0.68 * s2n - 0.07 * s3n);
+        double fk2 = 1.0241 + 0.2863 * cn + 0.0083 * c2n;
+        double uk2 = Math.toRadians(-17.74 * sn + 0.68 * s2n - 0.04 * s3n);
+        double fmm = 1.0 - 0.1300 * cn + 0.0013 * c2n;
+        double fmf = 1.0429 + 0.4135 * cn - 0.004 * c2n;
+        double umf = Math.toRadians(-23.74 * sn + 2.68 * s2n - 0.38 * s3n);
+
+        for (int j = 0; j < constituents.length; j++) {
+            switch (NODAL[constituents[j]]) {
+                case NODAL_M2:
+                    f[j] = fm2;
+                    u[j] = um2;
+                    break;
+                case NODAL_O1:
+                    f[j] = fo1;
+                    u[j] = uo1;
+                    break;
+                case NODAL_K1:
+                    f[j] = fk1;
+                    u[j] = uk1;
+                    break;
+                case NODAL_K2:
+                    f[j] = fk2;
+                    u[j] = uk2;
+                    break;
+                case NODAL_M2_SQUARED:
+                    f[j] = fm2 * fm2;
+                    u[j] = 2 * um2;
+                    break;
+                case NODAL_M2_CUBED:
+                    f[j] = fm2 * fm2 * fm2;
+                    u[j] = 3 * um2;
+                    break;
+                case NODAL_M2K1:
+                    f[j] = fm2 * fk1;
+                    u[j] = um2 + uk1;
+                    break;
+                case NODAL_MM:
+                    f[j] = fmm;
+                    u[j] = 0;
+                    break;
+                case NODAL_MF:
+                    f[j] = fmf;
+                    u[j] = umf;
+                    break;
+                default:
+                    f[j] = 1;
+                    u[j] = 0;
+            }
+        }
+    }
+}
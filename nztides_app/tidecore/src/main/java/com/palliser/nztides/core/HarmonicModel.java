@@ -0,0 +1,298 @@
+package com.palliser.nztides.core;
+
+import java.util.Arrays;
+
+/**
+ * Harmonic tide prediction for one port, good for any date rather than just the
+ * years a table was made for.
+ *
+ * The height in metres at t seconds since 1970 is
+ * <pre>
+ *   z0 + sum f_j A_j cos(w_j (t - epoch) + u_j - g_j)
+ * </pre>
+ * where A_j and g_j are the amplitude and phase of constituent j and f_j, u_j are its
+ * nodal corrections, which are held fixed over each UTC day. Sampling many times
+ * steps each constituent forward by rotating its (cos, sin) pair rather than calling
+ * Math.cos for every constituent at every sample; the rotation is reseeded exactly at
+ * each day boundary so rounding can't build up. A model is immutable and thread safe.
+ */
+public final class HarmonicModel {
+
+    /** Sampling interval used to bracket highs and lows */
+    static final int EXTREMA_STEP = 10 * 60;
+    /**
+     * A turn of the curve less than this long or this high (metres) after the last one
+     * is a wiggle, as the shallow water constituents can put in a stand of the tide,
+     * rather than a tide. The LINZ tables have their tides at least five hours and
+     * 0.2 m apart at all but a handful of ports.
+     */
+    static final int MIN_GAP = 2 * 3600;
+    static final double MIN_RANGE = 0.15;
+
+    private static final int DAY = 86400;
+
+    private final int epoch;
+    private final double z0;
+    private final int[] constituents;
+    private final double[] amps;
+    private final double[] phases;
+    private final double[] omegas;
+
+    /** Nodal corrections folded into the amplitudes and phases for one day */
+    private static final class Nodal {
+        int day = Integer.MIN_VALUE;
+        final double[] amp;
+        final double[] phase;
+
+        Nodal(int n) {
+            amp = new double[n];
+            phase = new double[n];
+        }
+    }
+
+    /** The day heightAt and rateAt last used, never changed once published */
+    private volatile Nodal nodal;
+
+    /**
+     * Amplitudes are in metres and phases in radians, both indexed like
+     * constituents, which holds indices into Constituents.NAMES.
+     */
+    public HarmonicModel(int epoch, double z0, int[] constituents, double[] amps, double[] phases) {
+        if (amps.length != constituents.length || phases.length != constituents.length)
+            throw new IllegalArgumentException("constituents, amps and phases differ in length");
+        this.epoch = epoch;
+        this.z0 = z0;
+        this.constituents = constituents.clone();
+        this.amps = amps.clone();
+        this.phases = phases.clone();
+        omegas = new double[constituents.length];
+        for (int j = 0; j < constituents.length; j++)
+            omegas[j] = Constituents.omega(constituents[j]);
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    /** Mean sea level above chart datum in metres */
+    public double meanLevel() {
+        return z0;
+    }
+
+    public int numConstituents() {
+        return constituents.length;
+    }
+
+    /** Index into Constituents.NAMES of the j'th constituent */
+    public int constituent(int j) {
+        return constituents[j];
+    }
+
+    /** Amplitude of the j'th constituent in metres */
+    public double amplitude(int j) {
+        return amps[j];
+    }
+
+    /** Phase of the j'th constituent in radians */
+    public double phase(int j) {
+        return phases[j];
+    }
+
+    /** Rough number of bytes of heap the model takes up */
+    public int sizeInBytes() {
+        return 64 + constituents.length * (4 + 8 + 8 + 8) + 2 * (48 + 16 * constituents.length);
+    }
+
+    /** Height in metres at time secs */
+    public double heightAt(int secs) {
+        return height(secs, nodal(dayOf(secs)));
+    }
+
+    private double height(int secs, Nodal nd) {
+        double dt = secs - (double) epoch;
+        double h = z0;
+        for (int j = 0; j < omegas.length; j++)
+            h += nd.amp[j] * Math.cos(omegas[j] * dt + nd.phase[j]);
+        return h;
+    }
+
+    /** Rate the tide is rising (negative for falling) at time secs in metres per hour */
+    public double rateAt(int secs) {
+        Nodal nd = nodal(dayOf(secs));
+        double dt = secs - (double) epoch;
+        double r = 0;
+        for (int j = 0; j < omegas.length; j++)
+            r -= nd.amp[j] * omegas[j] * Math.sin(omegas[j] * dt + nd.phase[j]);
+        return r * 60 * 60;
+    }
+
+    /**
+     * Heights in metres at start, start+step, ... into out[off..off+n).
+     */
+    public void sample(int start, int step, float[] out, int off, int n) {
+        if (step <= 0)
+            throw new IllegalArgumentException("step must be positive");
+        int nc = omegas.length;
+        double[] c = new double[nc];
+        double[] s = new double[nc];
+        double[] dc = new double[nc];
+        double[] ds = new double[nc];
+        rotations(step, dc, ds);
+
+        Nodal nd = new Nodal(nc);
+        long t = start;
+        for (int k = 0; k < n; k++, t += step) {
+            int d = dayOf(t);
+            if (d != nd.day) {
+                load(nd, d);
+                seed(t, nd, c, s);
+            }
+            double h = z0;
+            for (int j = 0; j < nc; j++) {
+                h += nd.amp[j] * c[j];
+                double cj = c[j] * dc[j] - s[j] * ds[j];
+                s[j] = s[j] * dc[j] + c[j] * ds[j];
+                c[j] = cj;
+            }
+            out[off + k] = (float) h;
+        }
+    }
+
+    /**
+     * The highs and lows from from up to (but not including) to, as a table like the
+     * LINZ ones: times rounded to the minute and heights to the centimetre.
+     */
+    public TideTable extremes(int from, int to) {
+        int max = (int) Math.max(0, ((long) to - from) / MIN_GAP + 2);
+        int[] times = new int[max];
+        short[] heights = new short[max];
+        int n = extremes(from, to, times, heights);
+        return new TideTable(Arrays.copyOf(times, n), Arrays.copyOf(heights, n));
+    }
+
+    /**
+     * Write the highs and lows from from up to (but not including) to into times
+     * and heights (centimetres), stopping early if they fill up.
+     * Returns the number written. Highs and lows always alternate: each turn of the
+     * curve is only taken as a tide once the curve has gone on at least MIN_GAP and
+     * MIN_RANGE from it the other way, and the highest high or lowest low before that
+     * is the one kept.
+     */
+    public int extremes(int from, int to, int[] times, short[] heights) {
+        int nc = omegas.length;
+        double[] c = new double[nc];
+        double[] s = new double[nc];
+        double[] dc = new double[nc];
+        double[] ds = new double[nc];
+        rotations(EXTREMA_STEP, dc, ds);
+
+        int count = 0;
+        Nodal nd = new Nodal(nc);
+        double prev = 0;
+        //the turn that will be the next tide unless a higher high or lower low turns up first
+        boolean found = false;
+        boolean high = false;
+        int time = 0;
+        double height = 0;
+        //start and finish a day out so the turns either side of the range are weighed too
+        for (long t = (long) from - DAY; t < (long) to + DAY && count < times.length; t += EXTREMA_STEP) {
+            int d = dayOf(t);
+            if (d != nd.day) {
+                load(nd, d);
+                seed(t, nd, c, s);
+            }
+            double rate = 0;
+            for (int j = 0; j < nc; j++) {
+                rate -= nd.amp[j] * omegas[j] * s[j];
+                double cj = c[j] * dc[j] - s[j] * ds[j];
+                s[j] = s[j] * dc[j] + c[j] * ds[j];
+                c[j] = cj;
+            }
+            if ((prev > 0 && rate <= 0) || (prev < 0 && rate >= 0)) {
+                //the rate changed sign in the last step, interpolate then polish the root
+                double tz = t - EXTREMA_STEP + EXTREMA_STEP * prev / (prev - rate);
+                int turn = 60 * (int) Math.round(refine(tz, nd) / 60);
+                double h = height(turn, nd);
+                boolean peak = prev > 0;
+                if (found && peak != high && turn - time >= MIN_GAP && Math.abs(h - height) >= MIN_RANGE) {
+                    //the tide has turned, so the last turn was a high or low
+                    if (time >= to)
+                        break;
+                    if (time >= from) {
+                        times[count] = time;
+                        heights[count] = (short) Math.round(height * TideTable.HEIGHT_SCALE);
+                        count++;
+                    }
+                    found = false;
+                }
+                if (!found || (peak == high && (peak ? h > height : h < height))) {
+                    found = true;
+                    high = peak;
+                    time = turn;
+                    height = h;
+                }
+            }
+            prev = rate;
+        }
+        return count;
+    }
+
+    /** A couple of Newton steps on the rate of rise to pin down the time of a high or low */
+    private double refine(double t, Nodal nd) {
+        for (int it = 0; it < 2; it++) {
+            double dt = t - epoch;
+            double r = 0, dr = 0;
+            for (int j = 0; j < omegas.length; j++) {
+                double a = omegas[j] * dt + nd.phase[j];
+                double w = omegas[j];
+                r -= nd.amp[j] * w * Math.sin(a);
+                dr -= nd.amp[j] * w * w * Math.cos(a);
+            }
+            if (dr == 0)
+                break;
+            t -= r / dr;
+        }
+        return t;
+    }
+
+    private void rotations(int step, double[] dc, double[] ds) {
+        for (int j = 0; j < omegas.length; j++) {
+            dc[j] = Math.cos(omegas[j] * step);
+            ds[j] = Math.sin(omegas[j] * step);
+        }
+    }
+
+    private void seed(long t, Nodal nd, double[] c, double[] s) {
+        double dt = t - (double) epoch;
+        for (int j = 0; j < omegas.length; j++) {
+            double a = omegas[j] * dt + nd.phase[j];
+            c[j] = Math.cos(a);
+            s[j] = Math.sin(a);
+        }
+    }
+
+    private static int dayOf(long secs) {
+        return (int) Math.floorDiv(secs, (long) DAY);
+    }
+
+    /** Nodal corrections for the given day, cached since consecutive calls nearly always share one */
+    private Nodal nodal(int day) {
+        Nodal nd = nodal;
+        if (nd != null && nd.day == day)
+            return nd;
+        nd = new Nodal(constituents.length);
+        load(nd, day);
+        nodal = nd;
+        return nd;
+    }
+
+    /** Work out the nodal corrections for noon on the given day */
+    private void load(Nodal nd, int day) {
+        Constituents.nodal(constituents, day * DAY + DAY / 2, nd.amp, nd.phase);
+        for (int j = 0; j < constituents.length; j++) {
+            nd.amp[j] *= amps[j];
+            nd.phase[j] -= phases[j];
+        }
+        nd.day = day;
+    }
+}
@@ -0,0 +1,183 @@
+package com.palliser.nztides.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * What the last tide page was made from: the port, the window of its tides the page
+ * was drawn from and the zone they are shown in. Saved when the page changes so a
+ * cold start can render the page again straight away, before the database is even
+ * opened, and refresh it once the real data is loaded.
+ *
+ * A snapshot is a couple of kilobytes. It is tagged with the version of the data it
+ * was taken from, and is only used while that is still the version installed and its
+ * tides still cover the time. Layout, big endian:
+ * <pre>
+ *   i32 magic, i32 format, utf data version, utf port, i32 last tide of the port
+ *   utf zone id, i32 raw offset, i32 n, n x (i32 transition, i32 offset)
+ *   i32 n, n x i32 time, n x i16 height in cm
+ * </pre>
+ */
+public final class PageSnapshot {
+
+    private static final int MAGIC = 0x4e5a5350;//"NZSP"
+    private static final int FORMAT = 1;
+
+    private final String version;
+    private final String port;
+    private final int lasttide;
+    private final ZoneTable zone;
+    private final TideTable table;
+
+    /**
+     * Snapshot of a page of port made from table, shown in zone. lasttide is the last
+     * tide in the whole of the port's data, for the page's footer.
+     */
+    public PageSnapshot(String version, String port, int lasttide, ZoneTable zone, TideTable table) {
+        this.version = version;
+        this.port = port;
+        this.lasttide = lasttide;
+        this.zone = zone;
+        this.table = table;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public String port() {
+        return port;
+    }
+
+    public int lastTide() {
+        return lasttide;
+    }
+
+    public ZoneTable zone() {
+        return zone;
+    }
+
+    public TideTable table() {
+        return table;
+    }
+
+    /** True if the snapshot is of port, taken from data of this version, and covers secs */
+    public boolean isCurrent(String version, String port, int secs) {
+        return this.version.equals(version) && this.port.equals(port) && table.covers(secs);
+    }
+
+    /** True if the snapshot holds the same page data as the one that would be taken now */
+    public boolean sameAs(String version, String port, TideTable table) {
+        return this.version.equals(version) && this.port.equals(port)
+                && this.table.size() == table.size()
+                && (table.size() == 0 || this.table.firstTime() == table.firstTime());
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT);
+        data.writeUTF(version);
+        data.writeUTF(port);
+        data.writeInt(lasttide);
+        data.writeUTF(zone.id());
+        data.writeInt(zone.rawOffset());
+        data.writeInt(zone.size());
+        for (int k = 0; k < zone.size(); k++) {
+            data.writeInt(zone.transition(k));
+            data.writeInt(zone.offsetAt(k));
+        }
+        data.writeInt(table.size());
+        for (int k = 0; k < table.size(); k++)
+            data.writeInt(table.time(k));
+        for (int k = 0; k < table.size(); k++)
+            data.writeShort(table.heightCm(k));
+        data.flush();
+    }
+
+    /** The snapshot written to in, an IOException if it isn't one this version can read */
+    public static PageSnapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != FORMAT)
+            throw new IOException("not a page snapshot");
+        String version = data.readUTF();
+        String port = data.readUTF();
+        int lasttide = data.readInt();
+        String zoneid = data.readUTF();
+        int raw = data.readInt();
+        int[] transitions = new int[count(data.readInt())];
+        int[] offsets = new int[transitions.length];
+        for (int k = 0; k < transitions.length; k++) {
+            transitions[k] = data.readInt();
+            offsets[k] = data.readInt();
+        }
+        //checked here so a damaged file is an IOException, not the tables' IllegalArgumentException
+        if (transitions.length == 0 || transitions[0] != Integer.MIN_VALUE)
+            throw new IOException("bad page snapshot");
+        int[] times = new int[count(data.readInt())];
+        short[] heights = new short[times.length];
+        for (int k = 0; k < times.length; k++) {
+            times[k] = data.readInt();
+            if (k > 0 && times[k] <= times[k - 1])
+                throw new IOException("bad page snapshot");
+        }
+        for (int k = 0; k < times.length; k++)
+            heights[k] = data.readShort();
+        return new PageSnapshot(version, port, lasttide, new ZoneTable(zoneid, raw, transitions, offsets),
+                new TideTable(times, heights));
+    }
+
+    private static int count(int n) throws IOException {
+        if (n < 0 || n > 1 << 16)
+            throw new IOException("bad page snapshot");
+        return n;
+    }
+
+    /** The snapshot saved in file, or null if there isn't one */
+    public static PageSnapshot load(File file) throws IOException {
+        long started = TideMetrics.SNAPSHOT.start();
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return read(new BufferedInputStream(in));
+        } finally {
+            in.close();
+            TideMetrics.SNAPSHOT.stop(started);
+        }
+    }
+
+    /**
+     * Save the snapshot in file, by writing it alongside and renaming it over the old
+     * one so a reader never sees half a snapshot.
+     */
+    public void save(File file) throws IOException {
+        long started = TideMetrics.SNAPSHOT.start();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file))
+                throw new IOException("couldn't rename " + tmp + " to " + file);
+        } finally {
+            tmp.delete();//only still there if something went wrong
+            TideMetrics.SNAPSHOT.stop(started);
+        }
+    }
+}
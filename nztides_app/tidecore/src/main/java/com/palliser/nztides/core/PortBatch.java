@@ -0,0 +1,140 @@
+package com.palliser.nztides.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Works out the state of the tide at every port in a database for one time, for an
+ * overview of all the harbours at once.
+ *
+ * Every port's table is decoded the first time it is needed and kept, about 2MB for
+ * the whole country, after which a query is just a binary search and a cosine per
+ * port. Ports are split into blocks that are worked on in parallel on a fork join
+ * pool. ForkJoinPool needs Android 5, so the app can only use this on newer devices.
+ */
+public final class PortBatch {
+
+    /** Ports per fork join task, small enough to spread 88 ports over a few cores */
+    static final int BLOCK = 8;
+
+    private final TideDatabase db;
+    private final ForkJoinPool pool;
+    private final TideTable[] tables;
+
+    /** Batch over db using the common fork join pool */
+    public PortBatch(TideDatabase db) {
+        this(db, ForkJoinPool.commonPool());
+    }
+
+    public PortBatch(TideDatabase db, ForkJoinPool pool) {
+        this.db = db;
+        this.pool = pool;
+        tables = new TideTable[db.numPorts()];
+    }
+
+    public int numPorts() {
+        return tables.length;
+    }
+
+    /** A result struct the right size for this batch */
+    public PortStates newStates() {
+        return new PortStates(tables.length);
+    }
+
+    /** Fill out with the state of every port at nowsecs, working in parallel */
+    public void evaluate(int nowsecs, PortStates out) {
+        if (out.size() != tables.length)
+            throw new IllegalArgumentException("states are for " + out.size() + " ports, not " + tables.length);
+        out.time = nowsecs;
+        pool.invoke(new Block(nowsecs, out, 0, tables.length));
+    }
+
+    /** Fill in ports from..to-1 of out with their state at nowsecs on the calling thread */
+    public void evaluate(int nowsecs, PortStates out, int from, int to) {
+        out.time = nowsecs;
+        for (int p = from; p < to; p++)
+            evaluatePort(p, nowsecs, out);
+    }
+
+    private final class Block extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int nowsecs;
+        private final PortStates out;
+        private final int from;
+        private final int to;
+
+        Block(int nowsecs, PortStates out, int from, int to) {
+            this.nowsecs = nowsecs;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BLOCK) {
+                for (int p = from; p < to; p++)
+                    evaluatePort(p, nowsecs, out);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Block(nowsecs, out, from, mid), new Block(nowsecs, out, mid, to));
+        }
+    }
+
+    /**
+     * The table for port, decoded on first use. Two threads can race to decode the same
+     * table, which only wastes a little work as the tables are immutable.
+     */
+    public TideTable table(int port) {
+        TideTable table = tables[port];
+        if (table == null) {
+            table = db.table(port);
+            synchronized (tables) {
+                if (tables[port] == null)
+                    tables[port] = table;
+                else
+                    table = tables[port];
+            }
+        }
+        return table;
+    }
+
+    private void evaluatePort(int p, int nowsecs, PortStates out) {
+        TideTable table = table(p);
+        int k = table.indexAfter(nowsecs);
+        if (k == 0 || k >= table.size()) {
+            out.covered[p] = false;
+            out.height[p] = Float.NaN;
+            out.rate[p] = Float.NaN;
+            out.rising[p] = false;
+            out.nextHighTime[p] = 0;
+            out.nextHighHeight[p] = Float.NaN;
+            out.nextLowTime[p] = 0;
+            out.nextLowHeight[p] = Float.NaN;
+            return;
+        }
+        out.covered[p] = true;
+        out.height[p] = (float) table.segmentHeight(k, nowsecs);
+        out.rate[p] = (float) table.segmentRate(k, nowsecs);
+        boolean highnext = table.heightCm(k) > table.heightCm(k - 1);
+        out.rising[p] = highnext;
+        int high = highnext ? k : k + 1;
+        int low = highnext ? k + 1 : k;
+        if (high < table.size()) {
+            out.nextHighTime[p] = table.time(high);
+            out.nextHighHeight[p] = table.height(high);
+        } else {
+            out.nextHighTime[p] = 0;
+            out.nextHighHeight[p] = Float.NaN;
+        }
+        if (low < table.size()) {
+            out.nextLowTime[p] = table.time(low);
+            out.nextLowHeight[p] = table.height(low);
+        } else {
+            out.nextLowTime[p] = 0;
+            out.nextLowHeight[p] = Float.NaN;
+        }
+    }
+}
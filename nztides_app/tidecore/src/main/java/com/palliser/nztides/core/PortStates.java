@@ -0,0 +1,43 @@
+package com.palliser.nztides.core;
+
+/**
+ * The state of the tide at every port at one time, as filled in by PortBatch.
+ *
+ * Everything is held in parallel primitive arrays indexed by port, in the order of
+ * the tide database, so one of these can be reused from one query to the next
+ * without allocating. Ports whose table doesn't cover the time have covered[p]
+ * false, NaN heights and rates and 0 times.
+ */
+public final class PortStates {
+
+    /** The time the states are for, seconds since 1970 */
+    public int time;
+
+    public final boolean[] covered;
+    /** Height now in metres */
+    public final float[] height;
+    /** Rate of rise now in metres per hour, negative when falling */
+    public final float[] rate;
+    public final boolean[] rising;
+    /** Time (seconds since 1970) and height in metres of the next high tide */
+    public final int[] nextHighTime;
+    public final float[] nextHighHeight;
+    /** Time (seconds since 1970) and height in metres of the next low tide */
+    public final int[] nextLowTime;
+    public final float[] nextLowHeight;
+
+    public PortStates(int nports) {
+        covered = new boolean[nports];
+        height = new float[nports];
+        rate = new float[nports];
+        rising = new boolean[nports];
+        nextHighTime = new int[nports];
+        nextHighHeight = new float[nports];
+        nextLowTime = new int[nports];
+        nextLowHeight = new float[nports];
+    }
+
+    public int size() {
+        return covered.length;
+    }
+}
@@ -0,0 +1,240 @@
+package com.palliser.nztides.core;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index of tide stations for finding the ports near a position.
+ *
+ * Stations are held as points on the unit sphere in a k-d tree. The straight line
+ * (chord) distance between two such points grows with the great circle distance, so
+ * searching on chords gives exactly the great circle order, with no trouble at the
+ * date line or the poles. The tree is laid out in arrays, a node being the middle of
+ * its range, so a query only measures the handful of stations near the answer rather
+ * than every one. An index is immutable and thread safe.
+ */
+public final class StationIndex {
+
+    /** Mean radius of the earth */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final int[] ids;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final byte[] axes;
+
+    /**
+     * Index stations at lat[k], lon[k] (degrees, north and east positive), which
+     * queries identify by ids[k].
+     */
+    public StationIndex(int[] ids, double[] lat, double[] lon) {
+        int n = ids.length;
+        if (lat.length != n || lon.length != n)
+            throw new IllegalArgumentException("ids, lat and lon differ in length");
+        this.ids = ids.clone();
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        axes = new byte[n];
+        for (int k = 0; k < n; k++) {
+            double phi = Math.toRadians(lat[k]);
+            double lambda = Math.toRadians(lon[k]);
+            xs[k] = Math.cos(phi) * Math.cos(lambda);
+            ys[k] = Math.cos(phi) * Math.sin(lambda);
+            zs[k] = Math.sin(phi);
+        }
+        build(0, n);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /** Great circle distance in kilometres between two positions in degrees */
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1), phi2 = Math.toRadians(lat2);
+        double dx = Math.cos(phi1) * Math.cos(Math.toRadians(lon1)) - Math.cos(phi2) * Math.cos(Math.toRadians(lon2));
+        double dy = Math.cos(phi1) * Math.sin(Math.toRadians(lon1)) - Math.cos(phi2) * Math.sin(Math.toRadians(lon2));
+        double dz = Math.sin(phi1) - Math.sin(phi2);
+        return chordToKm(dx * dx + dy * dy + dz * dz);
+    }
+
+    /** Ids of the k stations nearest lat, lon, nearest first */
+    public int[] nearest(double lat, double lon, int k) {
+        int[] out = new int[Math.min(k, ids.length)];
+        int n = nearest(lat, lon, out, null);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * The out.length stations nearest lat, lon, nearest first, with their distances
+     * in km in distkm if it isn't null. Returns the number found.
+     */
+    public int nearest(double lat, double lon, int[] out, double[] distkm) {
+        return search(lat, lon, Double.POSITIVE_INFINITY, out, distkm);
+    }
+
+    /** Ids of every station within radiusKm of lat, lon, nearest first */
+    public int[] within(double lat, double lon, double radiusKm) {
+        int[] out = new int[ids.length];
+        int n = within(lat, lon, radiusKm, out, null);
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Stations within radiusKm of lat, lon, nearest first, with their distances in
+     * distkm if it isn't null. If there are more than out.length only the nearest
+     * are returned. Returns the number found.
+     */
+    public int within(double lat, double lon, double radiusKm, int[] out, double[] distkm) {
+        if (radiusKm < 0)
+            return 0;
+        //the chord subtending radiusKm, squared; beyond half way round everything is in range
+        double half = radiusKm / (2 * EARTH_RADIUS_KM);
+        double chord = half >= Math.PI / 2 ? Double.POSITIVE_INFINITY : 2 * Math.sin(half);
+        return search(lat, lon, chord * chord, out, distkm);
+    }
+
+    private int search(double lat, double lon, double maxchord2, int[] out, double[] distkm) {
+        int cap = Math.min(out.length, ids.length);
+        if (cap == 0)
+            return 0;
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        Query q = new Query(Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi),
+                maxchord2, out, cap, distkm);
+        search(0, ids.length, q);
+        if (distkm != null) {
+            for (int k = 0; k < q.count && k < distkm.length; k++)
+                distkm[k] = chordToKm(q.dist[k]);
+        }
+        return q.count;
+    }
+
+    /** The state of one search, the results are kept sorted in out with squared chords in dist */
+    private static final class Query {
+        final double x, y, z;
+        final double maxchord2;
+        final int[] out;
+        final int cap;
+        final double[] dist;
+        int count;
+
+        Query(double x, double y, double z, double maxchord2, int[] out, int cap, double[] distkm) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.maxchord2 = maxchord2;
+            this.out = out;
+            this.cap = cap;
+            //squared chords go in the caller's distance array if there is one
+            this.dist = distkm != null && distkm.length >= cap ? distkm : new double[cap];
+        }
+
+        /** Squared chord a station has to beat to get into the results */
+        double bound() {
+            return count < cap ? maxchord2 : dist[count - 1];
+        }
+
+        void offer(int id, double d2) {
+            if (d2 > bound() || (count == cap && d2 == dist[count - 1]))
+                return;
+            int k = count < cap ? count++ : count - 1;
+            while (k > 0 && dist[k - 1] > d2) {
+                dist[k] = dist[k - 1];
+                out[k] = out[k - 1];
+                k--;
+            }
+            dist[k] = d2;
+            out[k] = id;
+        }
+    }
+
+    private void search(int lo, int hi, Query q) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        double dx = q.x - xs[mid], dy = q.y - ys[mid], dz = q.z - zs[mid];
+        q.offer(ids[mid], dx * dx + dy * dy + dz * dz);
+        double d = axes[mid] == 0 ? dx : axes[mid] == 1 ? dy : dz;
+        if (d < 0) {
+            search(lo, mid, q);
+            if (d * d <= q.bound())
+                search(mid + 1, hi, q);
+        } else {
+            search(mid + 1, hi, q);
+            if (d * d <= q.bound())
+                search(lo, mid, q);
+        }
+    }
+
+    /** Arrange lo..hi-1 so the middle splits the rest along the axis they are most spread out on */
+    private void build(int lo, int hi) {
+        if (hi - lo <= 1)
+            return;
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int k = lo; k < hi; k++) {
+            for (int a = 0; a < 3; a++) {
+                double v = coord(a, k);
+                min[a] = Math.min(min[a], v);
+                max[a] = Math.max(max[a], v);
+            }
+        }
+        int axis = 0;
+        for (int a = 1; a < 3; a++) {
+            if (max[a] - min[a] > max[axis] - min[axis])
+                axis = a;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(axis, lo, hi - 1, mid);
+        axes[mid] = (byte) axis;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /** Quickselect so that the point at k is where it would be if lo..hi were sorted on axis */
+    private void select(int axis, int lo, int hi, int k) {
+        while (lo < hi) {
+            double pivot = coord(axis, (lo + hi) >>> 1);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coord(axis, i) < pivot)
+                    i++;
+                while (coord(axis, j) > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private double coord(int axis, int k) {
+        return axis == 0 ? xs[k] : axis == 1 ? ys[k] : zs[k];
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+        t = zs[i];
+        zs[i] = zs[j];
+        zs[j] = t;
+    }
+
+    private static double chordToKm(double chord2) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(chord2) / 2));
+    }
+}
@@ -0,0 +1,112 @@
+package com.palliser.nztides.core;
+
+/**
+ * A position in a tide table that follows the time forward, for displays that
+ * update every minute.
+ *
+ * The cursor remembers which pair of tides it is between and the cosine joining
+ * them, so moving it on a minute only checks whether the next tide has been passed
+ * and steps over it if so; only a jump back in time or more than a tide ahead
+ * searches the table. Heights and rates are the same as TideTable gives. A cursor
+ * isn't thread safe.
+ */
+public final class TideCursor {
+
+    private final TideTable table;
+    private int secs;
+    /** Index of the tide after secs, 0 before the table and size() after it */
+    private int k;
+    private int told;
+    private int t;
+    private double omega;
+    private double amp;
+    private double mn;
+
+    /** A cursor on table, at the start of the table until it is moved */
+    public TideCursor(TideTable table) {
+        this.table = table;
+        k = -1;
+        moveTo(table.size() > 0 ? table.firstTime() : 0);
+    }
+
+    public TideTable table() {
+        return table;
+    }
+
+    /**
+     * Move to secs (seconds since 1970). Returns true if the cursor has moved on to a
+     * different pair of tides, eg so a list of upcoming tides can be redrawn.
+     */
+    public boolean moveTo(int secs) {
+        this.secs = secs;
+        if (k > 0 && k < table.size() && secs >= told && secs < t)
+            return false;
+        int next;
+        if (k > 0 && k + 1 < table.size() && secs >= t && secs < table.time(k + 1)) {
+            next = k + 1;
+            TideMetrics.CURSOR_STEPS.increment();
+        } else {
+            next = table.indexAfter(secs);
+            TideMetrics.BINARY_SEARCHES.increment();
+            TideMetrics.RECORDS_SEARCHED.add(32 - Integer.numberOfLeadingZeros(table.size()));
+        }
+        if (next == k)
+            return false;
+        k = next;
+        if (k > 0 && k < table.size()) {
+            told = table.time(k - 1);
+            t = table.time(k);
+            float hold = table.height(k - 1);
+            float h = table.height(k);
+            omega = table.segmentOmega(k);
+            amp = (hold - h) / 2;
+            mn = (h + hold) / 2;
+        }
+        return true;
+    }
+
+    /** The time the cursor is at */
+    public int time() {
+        return secs;
+    }
+
+    /** True if the table covers the cursor's time, otherwise heights and rates are NaN */
+    public boolean covered() {
+        return k > 0 && k < table.size();
+    }
+
+    /** Index of the first tide after the cursor's time, or size() if there isn't one */
+    public int index() {
+        return k;
+    }
+
+    /** Height in metres now */
+    public double height() {
+        return covered() ? amp * Math.cos(omega * (secs - told)) + mn : Double.NaN;
+    }
+
+    /** Rate of rise in metres per hour now, negative when falling */
+    public double rate() {
+        return covered() ? -amp * omega * Math.sin(omega * (secs - told)) * 60 * 60 : Double.NaN;
+    }
+
+    /** True if the tide is coming in, ie the next tide is a high */
+    public boolean rising() {
+        return covered() && amp < 0;
+    }
+
+    /** Angle through the cosine from the previous tide, 0 at it and pi at the next */
+    public double phase() {
+        return covered() ? omega * (secs - told) : Double.NaN;
+    }
+
+    /** Time of the last tide at or before now, while covered */
+    public int previousTime() {
+        return told;
+    }
+
+    /** Time of the next tide, while covered */
+    public int nextTime() {
+        return t;
+    }
+}
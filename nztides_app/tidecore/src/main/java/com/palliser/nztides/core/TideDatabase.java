@@ -0,0 +1,315 @@
+package com.palliser.nztides.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Reader for the packed tide database (tides.tdb) holding the tide tables of every port.
+ *
+ * The file is little endian and laid out as
+ * <pre>
+ *   "NZTB"                 magic
+ *   u16 version
+ *   u16 number of ports
+ *   port directory, for each port:
+ *     u8 length, utf-8 port name
+ *     i32 time of first tide (seconds since 1970)
+ *     i32 offset of the port's first record from the start of the file
+ *     i32 number of records
+ *     i32 latitude, i32 longitude of the station in millionths of a degree, north
+ *         and east positive, or both Integer.MIN_VALUE if it isn't known
+ *     i32 offset of the port's segment index from the start of the file
+ *   time zone the tides are shown in, see ZoneTable:
+ *     u8 length, ascii zone id
+ *     i32 standard offset, seconds east of UTC
+ *     u16 number of offsets, for each:
+ *       i32 instant it comes into force (Integer.MIN_VALUE for the first)
+ *       i32 offset, seconds east of UTC
+ *   segment indexes, for each port:
+ *     u16 number of segments, for each:
+ *       i32 time of the segment's first tide
+ *       i32 number of the segment's first record, counting from the port's first
+ *   records, 3 bytes each:
+ *     u16 minutes since the previous tide (0 for the first)
+ *     i8  height in decimetres
+ * </pre>
+ * LINZ predictions are to the minute and tides are about 6.2 hours apart, so the
+ * minute deltas fit comfortably in 16 bits.
+ *
+ * The file is mapped once and every port is decoded straight from the mapping, so
+ * switching ports is just a jump to another offset. A port's records are split into
+ * segments of a calendar month (UTC) each, and as each segment starts from an
+ * absolute time, table(port, from, to) can decode just the months a screen needs
+ * rather than every year in the file. The segment indexes are read from the mapping
+ * when they are used, so opening the database doesn't grow with the years either.
+ */
+public final class TideDatabase {
+
+    public static final String ASSET_NAME = "tides.tdb";
+    public static final int MAGIC = 'N' | 'Z' << 8 | 'T' << 16 | 'B' << 24;
+    public static final int VERSION = 4;
+    /** Bytes per segment in a segment index */
+    public static final int SEGMENT_SIZE = 8;
+    public static final int RECORD_SIZE = 3;
+
+    //StandardCharsets is API 19
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final ByteBuffer buf;
+    private final String[] names;
+    private final int[] firsttimes;
+    private final int[] offsets;
+    private final int[] counts;
+    private final int[] lats;
+    private final int[] lons;
+    private final int[] segments;
+    private final ZoneTable zone;
+    private final HashMap<String, Integer> index = new HashMap<String, Integer>();
+
+    /** Read the database from buf, which is used as is rather than copied. */
+    public TideDatabase(ByteBuffer buffer) throws IOException {
+        long started = TideMetrics.PARSE.start();
+        buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(0);
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+            throw new IOException("not a tide database");
+        int version = buf.getShort() & 0xffff;
+        if (version != VERSION)
+            throw new IOException("unsupported tide database version " + version);
+        int nports = buf.getShort() & 0xffff;
+
+        names = new String[nports];
+        firsttimes = new int[nports];
+        offsets = new int[nports];
+        counts = new int[nports];
+        lats = new int[nports];
+        lons = new int[nports];
+        segments = new int[nports];
+        for (int p = 0; p < nports; p++) {
+            byte[] name = new byte[buf.get() & 0xff];
+            buf.get(name);
+            names[p] = new String(name, UTF_8);
+            firsttimes[p] = buf.getInt();
+            offsets[p] = buf.getInt();
+            counts[p] = buf.getInt();
+            lats[p] = buf.getInt();
+            lons[p] = buf.getInt();
+            segments[p] = buf.getInt();
+            if (offsets[p] < 0 || counts[p] < 0 || (long) offsets[p] + (long) counts[p] * RECORD_SIZE > buf.limit())
+                throw new IOException("tide database is truncated");
+            if (segments[p] < 0 || segments[p] > buf.limit() - 2
+                    || segments[p] + 2 + (long) numSegments(p) * SEGMENT_SIZE > buf.limit())
+                throw new IOException("tide database is truncated");
+            index.put(names[p], p);
+        }
+
+        byte[] id = new byte[buf.get() & 0xff];
+        buf.get(id);
+        int rawoffset = buf.getInt();
+        int n = buf.getShort() & 0xffff;
+        if (n == 0 || buf.remaining() < 8 * n)
+            throw new IOException("tide database is truncated");
+        int[] transitions = new int[n];
+        int[] offsets = new int[n];
+        for (int k = 0; k < n; k++) {
+            transitions[k] = buf.getInt();
+            offsets[k] = buf.getInt();
+        }
+        if (transitions[0] != Integer.MIN_VALUE)
+            throw new IOException("bad time zone in tide database");
+        zone = new ZoneTable(new String(id, US_ASCII), rawoffset, transitions, offsets);
+        TideMetrics.PARSE.stop(started);
+    }
+
+    /** Map length bytes of channel starting at offset and read the database from them */
+    public static TideDatabase map(FileChannel channel, long offset, long length) throws IOException {
+        return new TideDatabase(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    public int numPorts() {
+        return names.length;
+    }
+
+    public String portName(int port) {
+        return names[port];
+    }
+
+    /** Index of the named port, or -1 if it isn't in the database */
+    public int portIndex(String name) {
+        Integer p = index.get(name);
+        return p == null ? -1 : p;
+    }
+
+    public int numRecords(int port) {
+        return counts[port];
+    }
+
+    /** Latitude of the port's tide station in degrees, north positive, or NaN if it isn't known */
+    public double latitude(int port) {
+        return lats[port] == Integer.MIN_VALUE ? Double.NaN : lats[port] / 1e6;
+    }
+
+    /** Longitude of the port's tide station in degrees, east positive, or NaN if it isn't known */
+    public double longitude(int port) {
+        return lons[port] == Integer.MIN_VALUE ? Double.NaN : lons[port] / 1e6;
+    }
+
+    /** The New Zealand time zone the tides were converted with, for showing them in */
+    public ZoneTable zone() {
+        return zone;
+    }
+
+    /** Index of the tide stations of every port whose position is known, see StationIndex */
+    public StationIndex stations() {
+        int n = 0;
+        for (int p = 0; p < names.length; p++) {
+            if (lats[p] != Integer.MIN_VALUE)
+                n++;
+        }
+        int[] ports = new int[n];
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        n = 0;
+        for (int p = 0; p < names.length; p++) {
+            if (lats[p] != Integer.MIN_VALUE) {
+                ports[n] = p;
+                lat[n] = latitude(p);
+                lon[n] = longitude(p);
+                n++;
+            }
+        }
+        return new StationIndex(ports, lat, lon);
+    }
+
+    /** Decode the tides of the given port */
+    public TideTable table(int port) {
+        long started = TideMetrics.DECODE.start();
+        int n = counts[port];
+        int[] times = new int[n];
+        short[] heights = new short[n];
+        int pos = recordOffset(port);
+        int t = firsttimes[port];
+        for (int k = 0; k < n; k++, pos += RECORD_SIZE) {
+            t += recordDelta(pos);
+            times[k] = t;
+            heights[k] = recordHeightCm(pos);
+        }
+        TideMetrics.DECODE.stop(started);
+        return new TideTable(times, heights);
+    }
+
+    /** Number of month long segments the port's records are split into */
+    public int numSegments(int port) {
+        return buf.getShort(segments[port]) & 0xffff;
+    }
+
+    /**
+     * Time of the port's last tide, without decoding more than its last segment, for
+     * telling how long the data lasts when only part of it has been decoded. 0 if the
+     * port has no tides.
+     */
+    public int lastTime(int port) {
+        int n = numSegments(port);
+        if (n == 0)
+            return 0;//no tides
+        int t = segmentTime(port, n - 1);
+        for (int k = segmentRecord(port, n - 1) + 1; k < counts[port]; k++)
+            t += recordDelta(offsets[port] + k * RECORD_SIZE);
+        return t;
+    }
+
+    /** Time of the first tide of segment s of port */
+    private int segmentTime(int port, int s) {
+        return buf.getInt(segments[port] + 2 + s * SEGMENT_SIZE);
+    }
+
+    /** Number of the first record of segment s of port */
+    private int segmentRecord(int port, int s) {
+        return buf.getInt(segments[port] + 2 + s * SEGMENT_SIZE + 4);
+    }
+
+    /** The last segment of port starting at or before secs, 0 if they all start after it */
+    private int segmentAt(int port, int secs) {
+        int lo = 0, hi = numSegments(port);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segmentTime(port, mid) > secs)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    /**
+     * Decode only the tides of port needed between from and to: the segments those
+     * times fall in, plus the tide before and the tide after so every time from from to
+     * to can be interpolated even where it crosses into a neighbouring month. The
+     * table is clipped to the port's data, so check covers() as usual.
+     */
+    public TideTable table(int port, int from, int to) {
+        if (numSegments(port) == 0)
+            return table(port);
+        long started = TideMetrics.DECODE.start();
+        int s0 = segmentAt(port, from);
+        int s1 = segmentAt(port, to);
+        int first = segmentRecord(port, s0);
+        int t = segmentTime(port, s0);
+        int end = s1 + 1 < numSegments(port) ? segmentRecord(port, s1 + 1) : counts[port];
+        if (first > 0) {
+            t -= recordDelta(offsets[port] + first * RECORD_SIZE);
+            first--;
+        }
+        end = Math.min(end + 1, counts[port]);
+
+        int n = end - first;
+        int[] times = new int[n];
+        short[] heights = new short[n];
+        int pos = offsets[port] + first * RECORD_SIZE;
+        for (int k = 0; k < n; k++, pos += RECORD_SIZE) {
+            if (k > 0)
+                t += recordDelta(pos);
+            times[k] = t;
+            heights[k] = recordHeightCm(pos);
+        }
+        TideMetrics.DECODE.stop(started);
+        return new TideTable(times, heights);
+    }
+
+    /*
+     * Raw record access for readers in this package that walk a port's records in
+     * order without decoding the whole table. A port's first record is at
+     * recordOffset(port), the next RECORD_SIZE bytes on, and so on; the time of a
+     * tide is firstTime(port) plus the deltas of its record and all before it.
+     */
+
+    int recordOffset(int port) {
+        return offsets[port];
+    }
+
+    int firstTime(int port) {
+        return firsttimes[port];
+    }
+
+    /** Seconds between the tide of the record at pos and the one before it */
+    int recordDelta(int pos) {
+        return 60 * (buf.getShort(pos) & 0xffff);
+    }
+
+    short recordHeightCm(int pos) {
+        return (short) (buf.get(pos + 2) * TideTable.HEIGHT_SCALE / 10);
+    }
+
+    /** Decode the tides of the named port */
+    public TideTable table(String name) throws IOException {
+        int p = portIndex(name);
+        if (p < 0)
+            throw new IOException("no tide data for " + name);
+        return table(p);
+    }
+}
@@ -0,0 +1,266 @@
+package com.palliser.nztides.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the high and low tides of a set of ports over a range of dates as CSV or
+ * as an iCalendar file of events.
+ *
+ * Tides are read straight from the database records in order, one port after
+ * another, and each line is built in a char buffer that is reused for every line,
+ * so an export of any size runs in the same small amount of memory. Times are
+ * written in UTC. An exporter isn't thread safe.
+ */
+public final class TideExport {
+
+    public enum Format {
+        /** port,time,type,height with a header line, eg Auckland,2025-01-01T09:23Z,H,3.20 */
+        CSV,
+        /** One VEVENT per tide, for importing into a calendar */
+        ICALENDAR
+    }
+
+    private final Writer out;
+    private final Format format;
+    private final char[] line = new char[1024];
+    private int len;
+    private final char[] stamp = new char[16];
+    private int count;
+
+    /**
+     * Exporter writing to out. createdsecs (seconds since 1970) is the time the
+     * iCalendar events are stamped with.
+     */
+    public TideExport(Writer out, Format format, int createdsecs) {
+        this.out = out;
+        this.format = format;
+        len = 0;
+        appendStamp(createdsecs);
+        System.arraycopy(line, 0, stamp, 0, len);
+        len = 0;
+    }
+
+    /**
+     * Export the tides from from (inclusive) to to (exclusive) of every port in ports
+     * of db, in the order given, header and footer included. Returns the number of
+     * tides written. The writer is flushed but not closed.
+     */
+    public static int export(TideDatabase db, int[] ports, int from, int to, Format format, Writer out)
+            throws IOException {
+        TideExport export = new TideExport(out, format, (int) (System.currentTimeMillis() / 1000));
+        export.begin();
+        for (int p : ports)
+            export.port(db, p, from, to);
+        export.end();
+        out.flush();
+        return export.count();
+    }
+
+    /** Number of tides written so far */
+    public int count() {
+        return count;
+    }
+
+    /** Write the CSV header line or the start of the calendar */
+    public void begin() throws IOException {
+        if (format == Format.CSV) {
+            append("port,time,type,height\n");
+        } else {
+            append("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//palliser//nztides//EN\r\n");
+            append("CALSCALE:GREGORIAN\r\nMETHOD:PUBLISH\r\n");
+        }
+        flushLine();
+    }
+
+    /** Write the end of the calendar, CSV has no footer */
+    public void end() throws IOException {
+        if (format == Format.ICALENDAR) {
+            append("END:VCALENDAR\r\n");
+            flushLine();
+        }
+    }
+
+    /** Write the tides of port from from (inclusive) to to (exclusive) */
+    public void port(TideDatabase db, int port, int from, int to) throws IOException {
+        int n = db.numRecords(port);
+        if (n < 2)
+            return;
+        String name = db.portName(port);
+        int pos = db.recordOffset(port);
+        int t = db.firstTime(port);
+        short h = db.recordHeightCm(pos);
+        //the first tide is high if the second is lower, after that each tide is high if it is higher than the
+        //last, or the opposite of the last if the two round to the same height
+        boolean high = h > db.recordHeightCm(pos + TideDatabase.RECORD_SIZE);
+        for (int k = 0; k < n; k++) {
+            if (k > 0) {
+                pos += TideDatabase.RECORD_SIZE;
+                t += db.recordDelta(pos);
+                short next = db.recordHeightCm(pos);
+                high = next != h ? next > h : !high;
+                h = next;
+            }
+            if (t >= to)
+                break;
+            if (t < from)
+                continue;
+            if (format == Format.CSV)
+                csvLine(name, t, high, h);
+            else
+                event(name, port, t, high, h);
+            flushLine();
+            count++;
+        }
+    }
+
+    private void csvLine(String name, int secs, boolean high, short cm) {
+        boolean quote = needsQuotes(name);
+        if (quote)
+            append('"');
+        for (int k = 0; k < name.length(); k++) {
+            char c = name.charAt(k);
+            if (c == '"')
+                append('"');
+            append(c);
+        }
+        if (quote)
+            append('"');
+        append(',');
+        int days = floorDays(secs);
+        appendCivilDate(days, true);
+        append('T');
+        int sod = secs - days * 86400;
+        appendDigits(sod / 3600, 2);
+        append(':');
+        appendDigits(sod / 60 % 60, 2);
+        append('Z');
+        append(high ? ",H," : ",L,");
+        appendMetres(cm);
+        append('\n');
+    }
+
+    private void event(String name, int port, int secs, boolean high, short cm) {
+        append("BEGIN:VEVENT\r\nUID:");
+        appendInt(secs);
+        append('-');
+        appendInt(port);
+        append("@nztides\r\nDTSTAMP:");
+        append(stamp, 0, stamp.length);
+        append("\r\nDTSTART:");
+        appendStamp(secs);
+        append("\r\nDURATION:PT0S\r\nSUMMARY:");
+        append(high ? "High tide " : "Low tide ");
+        appendMetres(cm);
+        append("m ");
+        //text values escape backslash, comma and semicolon
+        for (int k = 0; k < name.length(); k++) {
+            char c = name.charAt(k);
+            if (c == '\\' || c == ',' || c == ';')
+                append('\\');
+            append(c);
+        }
+        append("\r\nTRANSP:TRANSPARENT\r\nEND:VEVENT\r\n");
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+    /** UTC time in the iCalendar form 20250101T092300Z, always 16 characters */
+    private void appendStamp(int secs) {
+        int days = floorDays(secs);
+        appendCivilDate(days, false);
+        append('T');
+        int sod = secs - days * 86400;
+        appendDigits(sod / 3600, 2);
+        appendDigits(sod / 60 % 60, 2);
+        appendDigits(sod % 60, 2);
+        append('Z');
+    }
+
+    private static int floorDays(int secs) {
+        int days = secs / 86400;
+        if (secs % 86400 < 0)
+            days--;
+        return days;
+    }
+
+    /** yyyy-MM-dd, or yyyyMMdd without dashes, from days since 1970 */
+    private void appendCivilDate(int days, boolean dashes) {
+        //see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468L;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int d = doy - (153 * mp + 2) / 5 + 1;
+        int m = mp < 10 ? mp + 3 : mp - 9;
+        int y = (int) (yoe + era * 400 + (m <= 2 ? 1 : 0));
+
+        appendDigits(y, 4);
+        if (dashes)
+            append('-');
+        appendDigits(m, 2);
+        if (dashes)
+            append('-');
+        appendDigits(d, 2);
+    }
+
+    /** Centimetres as metres to two places, eg 3.20 or -0.10 */
+    private void appendMetres(short cm) {
+        int a = cm;
+        if (a < 0) {
+            append('-');
+            a = -a;
+        }
+        appendInt(a / 100);
+        append('.');
+        appendDigits(a % 100, 2);
+    }
+
+    private void appendInt(int v) {
+        if (v < 0) {
+            append('-');
+            v = -v;
+        }
+        int div = 1;
+        while (div <= v / 10)
+            div *= 10;
+        for (; div > 0; div /= 10)
+            append((char) ('0' + v / div % 10));
+    }
+
+    private void appendDigits(int v, int width) {
+        int div = 1;
+        for (int k = 1; k < width; k++)
+            div *= 10;
+        for (; div > 0; div /= 10)
+            append((char) ('0' + v / div % 10));
+    }
+
+    private void append(char c) {
+        line[len++] = c;
+    }
+
+    private void append(String s) {
+        s.getChars(0, s.length(), line, len);
+        len += s.length();
+    }
+
+    private void append(char[] s, int off, int n) {
+        System.arraycopy(s, off, line, len, n);
+        len += n;
+    }
+
+    private void flushLine() throws IOException {
+        out.write(line, 0, len);
+        len = 0;
+    }
+}
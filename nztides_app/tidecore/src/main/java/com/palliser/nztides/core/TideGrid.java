@@ -0,0 +1,158 @@
+package com.palliser.nztides.core;
+
+/**
+ * Heights at a set of ports over a run of evenly spaced times, for heat maps and
+ * route planning where every port is wanted at every step over a few days.
+ *
+ * Heights go into a caller's float[] a row per time, port by port along the row, NaN
+ * where a port's table doesn't cover the time. Each port's current segment is held
+ * in struct of arrays form, one array per parameter indexed by port, and as in
+ * TideTable.sample the cosine is only worked out when a port moves on to a new
+ * segment; in between each step rotates the (cos, sin) pair on by omega*step. A row
+ * is then the same few multiplies and adds for every port, which the vector version
+ * in the tidesimd module does several ports at a time. Use create() to get that one
+ * when it can run and this one otherwise.
+ *
+ * A grid keeps state between rows so isn't thread safe; use one per thread.
+ */
+public class TideGrid {
+
+    /** The vector version, only there when the tidesimd module is on the class path */
+    private static final String VECTOR_GRID = "com.palliser.nztides.simd.VectorTideGrid";
+
+    protected final TideTable[] tables;
+    protected final int numports;
+
+    /*
+     * The segment each port is in, struct of arrays. A port's height is
+     * amp*cos + mean, and the pair (cos, sin) rotates on by (dcos, dsin) each step
+     * until the time reaches end, when the port has to be seated again.
+     */
+    protected final float[] amp;
+    protected final float[] mean;
+    protected final float[] cos;
+    protected final float[] sin;
+    protected final float[] dcos;
+    protected final float[] dsin;
+    protected final int[] end;
+    /** Index in its table of the tide ending each port's segment */
+    protected final int[] next;
+
+    public TideGrid(TideTable[] tables) {
+        this.tables = tables.clone();
+        numports = tables.length;
+        amp = new float[numports];
+        mean = new float[numports];
+        cos = new float[numports];
+        sin = new float[numports];
+        dcos = new float[numports];
+        dsin = new float[numports];
+        end = new int[numports];
+        next = new int[numports];
+    }
+
+    /**
+     * The vector grid if the tidesimd module is there and the JVM has the vector API
+     * (java 17 and later with --add-modules jdk.incubator.vector), this one otherwise.
+     * Looked up by reflection so the core still builds for android.
+     */
+    public static TideGrid create(TideTable[] tables) {
+        try {
+            Class<?> c = Class.forName(VECTOR_GRID);
+            return (TideGrid) c.getConstructor(TideTable[].class).newInstance((Object) tables);
+        } catch (ReflectiveOperationException e) {
+            return new TideGrid(tables);
+        } catch (LinkageError e) {
+            //the class is there but the vector module isn't
+            return new TideGrid(tables);
+        }
+    }
+
+    public int numPorts() {
+        return numports;
+    }
+
+    /** Name of the way rows are worked out, for benchmarks and logs */
+    public String kind() {
+        return "scalar";
+    }
+
+    /**
+     * Heights in metres of every port at start, start+step, ... for steps times into
+     * grid, the heights at start+k*step in grid[off+k*numPorts()] onwards.
+     */
+    public void evaluate(int start, int step, int steps, float[] grid, int off) {
+        if (step <= 0)
+            throw new IllegalArgumentException("step must be positive");
+        if (steps < 0 || off < 0 || (long) off + (long) steps * numports > grid.length)
+            throw new IllegalArgumentException("grid is too small");
+        for (int p = 0; p < numports; p++)
+            seat(p, start, step, true);
+        long t = start;
+        for (int k = 0; k < steps; k++, t += step) {
+            //past the end of int the table has run out anyway
+            row((int) Math.min(t, Integer.MAX_VALUE), step, grid, off + k * numports);
+        }
+    }
+
+    /**
+     * Fill grid[off..off+numPorts()) with the heights at t and rotate every port on a
+     * step, seating any port whose segment ends at or before t first.
+     */
+    protected void row(int t, int step, float[] grid, int off) {
+        row(t, step, grid, off, 0, numports);
+    }
+
+    /** row() for ports from..to-1 only */
+    protected final void row(int t, int step, float[] grid, int off, int from, int to) {
+        for (int p = from; p < to; p++) {
+            if (t >= end[p])
+                seat(p, t, step, false);
+            float c = cos[p];
+            float s = sin[p];
+            grid[off + p] = amp[p] * c + mean[p];
+            cos[p] = c * dcos[p] - s * dsin[p];
+            sin[p] = s * dcos[p] + c * dsin[p];
+        }
+    }
+
+    /**
+     * Set port p up for the segment holding t. Outside the table the height is NaN
+     * until the table starts, or for good once it has ended. Unless search is set the
+     * port's segment is found by stepping on from the last one, as rows only go
+     * forwards in time.
+     */
+    protected final void seat(int p, int t, int step, boolean search) {
+        TideTable table = tables[p];
+        int k;
+        if (search) {
+            k = table.indexAfter(t);
+        } else {
+            k = next[p];
+            while (k < table.size() && table.time(k) <= t)
+                k++;
+        }
+        next[p] = k;
+        if (k == 0 || k >= table.size()) {
+            amp[p] = 0;
+            mean[p] = Float.NaN;
+            cos[p] = 1;
+            sin[p] = 0;
+            dcos[p] = 1;
+            dsin[p] = 0;
+            end[p] = k == 0 && table.size() > 0 ? table.time(0) : Integer.MAX_VALUE;
+            return;
+        }
+        int told = table.time(k - 1);
+        float hold = table.height(k - 1);
+        float h = table.height(k);
+        double omega = table.segmentOmega(k);
+        amp[p] = (hold - h) / 2;
+        mean[p] = (h + hold) / 2;
+        cos[p] = (float) Math.cos(omega * ((long) t - told));
+        sin[p] = (float) Math.sin(omega * ((long) t - told));
+        dcos[p] = (float) Math.cos(omega * step);
+        dsin[p] = (float) Math.sin(omega * step);
+        end[p] = table.time(k);
+    }
+}
@@ -0,0 +1,216 @@
+package com.palliser.nztides.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the stages of getting tides onto the screen,
+ * for finding out where the time goes on a slow phone.
+ *
+ * Metrics are off until setEnabled(true). While they are off a timer's start() is
+ * one volatile read and stop() and counters do nothing, so the calls can be left in
+ * the hot paths. Latencies go into power of two buckets of nanoseconds, which is
+ * enough for percentiles to within a factor of two at the cost of 64 longs. Timers
+ * and counters are thread safe; the results can be dumped as JSON.
+ */
+public final class TideMetrics {
+
+    private static final ArrayList<Timer> timers = new ArrayList<Timer>();
+    private static final ArrayList<Counter> counters = new ArrayList<Counter>();
+    private static volatile boolean enabled;
+
+    /** Opening and mapping an asset */
+    public static final Timer OPEN = new Timer("open");
+    /** Reading a database's header and directory */
+    public static final Timer PARSE = new Timer("parse");
+    /** Decoding a port's tide table */
+    public static final Timer DECODE = new Timer("decode");
+    /** Finding the current pair of tides in a table */
+    public static final Timer SEARCH = new Timer("search");
+    /** Working out the height and rate now */
+    public static final Timer INTERPOLATE = new Timer("interpolate");
+    /** Building the whole page of text, search and interpolation included */
+    public static final Timer TEXT = new Timer("text");
+    /** Making or updating the views that show a page */
+    public static final Timer INFLATE = new Timer("inflate");
+    /** Loading or saving the snapshot of the last page */
+    public static final Timer SNAPSHOT = new Timer("snapshot");
+
+    /** Table searches done with a binary search */
+    public static final Counter BINARY_SEARCHES = new Counter("binarySearches");
+    /** Records a binary search looked at */
+    public static final Counter RECORDS_SEARCHED = new Counter("recordsSearched");
+    /** Cursor moves that stepped on to the next tide rather than searching */
+    public static final Counter CURSOR_STEPS = new Counter("cursorSteps");
+    /** Renders that reused the list of tides from the one before */
+    public static final Counter LIST_REUSED = new Counter("listReused");
+
+    private TideMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** Zero every timer and counter */
+    public static void reset() {
+        synchronized (timers) {
+            for (Timer t : timers)
+                t.reset();
+            for (Counter c : counters)
+                c.reset();
+        }
+    }
+
+    /** A latency histogram */
+    public static final class Timer {
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Timer(String name) {
+            this.name = name;
+            synchronized (timers) {
+                timers.add(this);
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /** Start timing, returns the time to pass to stop(), 0 if metrics are off */
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /** Record the time since start, unless start was 0 */
+        public void stop(long start) {
+            if (start != 0)
+                record(System.nanoTime() - start);
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+                //retry
+            }
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public long totalNanos() {
+            return total.get();
+        }
+
+        public long maxNanos() {
+            return max.get();
+        }
+
+        /**
+         * Upper bound in nanoseconds of the bucket holding the fraction q of the way
+         * through the recorded times, eg q=0.99 for the 99th percentile.
+         */
+        public long percentileNanos(double q) {
+            long n = count.get();
+            if (n == 0)
+                return 0;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int b = 0; b < 64; b++) {
+                seen += buckets.get(b);
+                if (seen >= rank)
+                    return b == 0 ? 0 : Math.min(max.get(), (1L << b) - 1);
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int b = 0; b < 64; b++)
+                buckets.set(b, 0);
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+            synchronized (timers) {
+                counters.add(this);
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public void add(long n) {
+            if (enabled)
+                value.addAndGet(n);
+        }
+
+        public void increment() {
+            if (enabled)
+                value.incrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    /**
+     * Every timer and counter as JSON, times in microseconds, eg
+     * {"enabled":true,"timers":{"open":{"count":1,"totalUs":812,"maxUs":812,
+     * "p50Us":812,"p90Us":812,"p99Us":812},...},"counters":{"cursorSteps":3,...}}
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"enabled\":").append(enabled).append(",\"timers\":{");
+        synchronized (timers) {
+            for (int k = 0; k < timers.size(); k++) {
+                Timer t = timers.get(k);
+                if (k > 0)
+                    sb.append(',');
+                sb.append('"').append(t.name).append("\":{\"count\":").append(t.count());
+                sb.append(",\"totalUs\":").append(t.totalNanos() / 1000);
+                sb.append(",\"maxUs\":").append(t.maxNanos() / 1000);
+                sb.append(",\"p50Us\":").append(t.percentileNanos(0.5) / 1000);
+                sb.append(",\"p90Us\":").append(t.percentileNanos(0.9) / 1000);
+                sb.append(",\"p99Us\":").append(t.percentileNanos(0.99) / 1000);
+                sb.append('}');
+            }
+            sb.append("},\"counters\":{");
+            for (int k = 0; k < counters.size(); k++) {
+                Counter c = counters.get(k);
+                if (k > 0)
+                    sb.append(',');
+                sb.append('"').append(c.name).append("\":").append(c.get());
+            }
+        }
+        return sb.append("}}").toString();
+    }
+}
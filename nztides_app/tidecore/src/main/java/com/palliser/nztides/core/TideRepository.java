@@ -0,0 +1,191 @@
+package com.palliser.nztides.core;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process wide home of the tide data, for sharing it between activities, widgets,
+ * services and server threads.
+ *
+ * The data is held as an immutable Snapshot: a database and the port tables decoded
+ * from it. Readers take the current snapshot and work from it for as long as they
+ * like; a new data set is swapped in whole with install(), so a reader sees either the
+ * old data or the new, never a mixture, and the old snapshot goes once no reader
+ * holds it. Getting the snapshot or an already decoded table is a volatile read, with
+ * no locks. A table that isn't decoded yet is decoded once by whichever thread asks
+ * first, and any others asking at the same moment wait for that one rather than
+ * decoding it again.
+ */
+public final class TideRepository {
+
+    /** Where the database comes from the first time it is needed */
+    public interface Source {
+        TideDatabase open() throws IOException;
+    }
+
+    private static final TideRepository shared = new TideRepository();
+
+    private final AtomicReference<FutureTask<Snapshot>> current = new AtomicReference<FutureTask<Snapshot>>();
+    private final AtomicInteger generations = new AtomicInteger();
+
+    /** The repository shared by the whole process */
+    public static TideRepository shared() {
+        return shared;
+    }
+
+    /**
+     * The current snapshot, opening it from source if nothing has been installed yet.
+     * If several threads get here first at once the source is only opened by one.
+     */
+    public Snapshot snapshot(final Source source) throws IOException {
+        while (true) {
+            FutureTask<Snapshot> f = current.get();
+            if (f == null) {
+                FutureTask<Snapshot> mine = new FutureTask<Snapshot>(new Callable<Snapshot>() {
+                    public Snapshot call() throws IOException {
+                        return new Snapshot(source.open(), generations.incrementAndGet());
+                    }
+                });
+                if (!current.compareAndSet(null, mine))
+                    continue;//someone else is opening it, or has installed one
+                mine.run();
+                f = mine;
+            }
+            try {
+                return await(f);
+            } catch (IOException e) {
+                //let a later caller try again rather than fail for good
+                current.compareAndSet(f, null);
+                throw e;
+            }
+        }
+    }
+
+    /** The current snapshot, or null if there isn't one yet */
+    public Snapshot snapshot() throws IOException {
+        FutureTask<Snapshot> f = current.get();
+        return f == null ? null : await(f);
+    }
+
+    /**
+     * Make db the current data. Readers already holding the old snapshot keep it; any
+     * asking from now on get the new one, with none of its tables decoded yet.
+     */
+    public Snapshot install(TideDatabase db) {
+        final Snapshot snapshot = new Snapshot(db, generations.incrementAndGet());
+        FutureTask<Snapshot> f = new FutureTask<Snapshot>(new Callable<Snapshot>() {
+            public Snapshot call() {
+                return snapshot;
+            }
+        });
+        f.run();
+        current.set(f);
+        return snapshot;
+    }
+
+    /** The database and the tables decoded from it so far */
+    public static final class Snapshot {
+        private final TideDatabase db;
+        private final int generation;
+        private final AtomicReferenceArray<FutureTask<TideTable>> tables;
+
+        Snapshot(TideDatabase db, int generation) {
+            this.db = db;
+            this.generation = generation;
+            tables = new AtomicReferenceArray<FutureTask<TideTable>>(db.numPorts());
+        }
+
+        public TideDatabase database() {
+            return db;
+        }
+
+        /**
+         * Counts up from 1 with each snapshot the repository makes, so anything cached
+         * from one can tell when the data has changed under it.
+         */
+        public int generation() {
+            return generation;
+        }
+
+        /** The whole table of port, decoded on first use and then shared; a failed decode is tried again next time */
+        public TideTable table(final int port) {
+            FutureTask<TideTable> f = tables.get(port);
+            if (f == null) {
+                FutureTask<TideTable> mine = new FutureTask<TideTable>(new Callable<TideTable>() {
+                    public TideTable call() {
+                        return db.table(port);
+                    }
+                });
+                if (tables.compareAndSet(port, null, mine)) {
+                    mine.run();
+                    f = mine;
+                } else {
+                    f = tables.get(port);
+                }
+            }
+            try {
+                return await(f);
+            } catch (IOException e) {
+                tables.compareAndSet(port, f, null);
+                throw new IllegalStateException(e);//decoding doesn't do io
+            } catch (RuntimeException e) {
+                //let a later caller try again rather than fail for good
+                tables.compareAndSet(port, f, null);
+                throw e;
+            } catch (Error e) {
+                tables.compareAndSet(port, f, null);
+                throw e;
+            }
+        }
+
+        /** The whole table of the named port */
+        public TideTable table(String name) throws IOException {
+            int p = db.portIndex(name);
+            if (p < 0)
+                throw new IOException("no tide data for " + name);
+            return table(p);
+        }
+
+        @Override
+        public String toString() {
+            int decoded = 0;
+            for (int p = 0; p < tables.length(); p++) {
+                if (tables.get(p) != null)
+                    decoded++;
+            }
+            return "Snapshot[" + generation + ", " + decoded + "/" + tables.length() + " ports decoded]";
+        }
+    }
+
+    /** The result of f, which has been or is being run, waiting for it if need be */
+    private static <T> T await(FutureTask<T> f) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return f.get();
+                } catch (InterruptedException e) {
+                    //the decode goes on regardless, keep waiting and pass the interrupt on after
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
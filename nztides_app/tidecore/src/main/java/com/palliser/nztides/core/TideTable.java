@@ -0,0 +1,196 @@
+package com.palliser.nztides.core;
+
+/**
+ * Table of high and low tides for one port.
+ *
+ * Times are seconds since 1970 and heights are held in centimetres. Between two
+ * tides the height is assumed to vary cosinusoidally, see the NZ Nautical Almanac
+ * for more details. All queries work straight off the primitive arrays and don't
+ * allocate, so they are safe to call from a drawing loop or a server thread.
+ */
+public final class TideTable {
+
+    /** Stored heights are metres times HEIGHT_SCALE */
+    public static final int HEIGHT_SCALE = 100;
+
+    private final int[] times;
+    private final short[] heights;
+
+    /**
+     * The arrays are used as is, not copied. Times must be in ascending order.
+     */
+    public TideTable(int[] times, short[] heights) {
+        if (times.length != heights.length)
+            throw new IllegalArgumentException("times and heights differ in length");
+        this.times = times;
+        this.heights = heights;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    /** Rough number of bytes of heap the table takes up */
+    public int sizeInBytes() {
+        return 64 + 4 * times.length + 2 * heights.length;
+    }
+
+    /** Time of tide k in seconds since 1970 */
+    public int time(int k) {
+        return times[k];
+    }
+
+    /** Height of tide k in metres */
+    public float height(int k) {
+        return (float) heights[k] / (float) HEIGHT_SCALE;
+    }
+
+    /** Height of tide k in centimetres */
+    public short heightCm(int k) {
+        return heights[k];
+    }
+
+    public int firstTime() {
+        return times[0];
+    }
+
+    public int lastTime() {
+        return times[times.length - 1];
+    }
+
+    /** True if tide k is a high tide, ie higher than the tide before or after it */
+    public boolean isHigh(int k) {
+        if (k + 1 < heights.length)
+            return heights[k] > heights[k + 1];
+        return k > 0 && heights[k] > heights[k - 1];
+    }
+
+    /**
+     * Index of the first tide later than secs, or size() if there isn't one.
+     */
+    public int indexAfter(int secs) {
+        int lo = 0, hi = times.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] > secs)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** Index of the last tide at or before secs, or -1 if secs is before the table starts */
+    public int previousExtremum(int secs) {
+        return indexAfter(secs) - 1;
+    }
+
+    /** Index of the first tide after secs, or -1 if secs is at or after the last tide */
+    public int nextExtremum(int secs) {
+        int k = indexAfter(secs);
+        return k < times.length ? k : -1;
+    }
+
+    /** True if secs lies between the first and last tide so it can be interpolated */
+    public boolean covers(int secs) {
+        return times.length > 0 && secs >= times[0] && secs < times[times.length - 1];
+    }
+
+    /**
+     * Height in metres at time secs, NaN outside the table.
+     */
+    public double heightAt(int secs) {
+        int k = indexAfter(secs);
+        if (k == 0 || k == times.length)
+            return Double.NaN;
+        return segmentHeight(k, secs);
+    }
+
+    /**
+     * Rate the tide is rising (negative for falling) at time secs in metres per hour,
+     * NaN outside the table.
+     */
+    public double rateAt(int secs) {
+        int k = indexAfter(secs);
+        if (k == 0 || k == times.length)
+            return Double.NaN;
+        return segmentRate(k, secs);
+    }
+
+    /**
+     * Height in metres at secs using the cosine between tide k-1 and tide k.
+     * Callers that already know the segment can use this to skip the search.
+     */
+    public double segmentHeight(int k, int secs) {
+        int told = times[k - 1];
+        float hold = height(k - 1);
+        float h = height(k);
+        double omega = segmentOmega(k);
+        double amp = (hold - h) / 2;
+        double mn = (h + hold) / 2;
+        return amp * Math.cos(omega * (secs - told)) + mn;
+    }
+
+    /** Rate of rise in metres per hour at secs using the cosine between tide k-1 and tide k */
+    public double segmentRate(int k, int secs) {
+        int told = times[k - 1];
+        float hold = height(k - 1);
+        float h = height(k);
+        double omega = segmentOmega(k);
+        double amp = (hold - h) / 2;
+        return -amp * omega * Math.sin(omega * (secs - told)) * 60 * 60;
+    }
+
+    /**
+     * Heights in metres at start, start+step, ... into out[off..off+n), NaN where
+     * they fall outside the table. This is the same curve heightAt gives, but the
+     * cosine is only evaluated once per segment; each following sample rotates the
+     * previous (cos, sin) pair on by omega*step. Returns the number of samples that
+     * fell inside the table.
+     */
+    public int sample(int start, int step, float[] out, int off, int n) {
+        if (step <= 0)
+            throw new IllegalArgumentException("step must be positive");
+        int inside = 0;
+        int k = indexAfter(start);
+        long secs = start;
+        int i = 0;
+        while (i < n) {
+            if (k == 0 || k >= times.length) {
+                //before or after the table, skip ahead to where it starts if we can
+                out[off + i++] = Float.NaN;
+                secs += step;
+                if (k == 0 && times.length > 0 && secs >= times[0])
+                    k = indexAfter((int) secs);
+                continue;
+            }
+            int told = times[k - 1];
+            int t = times[k];
+            float hold = height(k - 1);
+            float h = height(k);
+            double omega = segmentOmega(k);
+            double amp = (hold - h) / 2;
+            double mn = (h + hold) / 2;
+            double c = Math.cos(omega * (secs - told));
+            double s = Math.sin(omega * (secs - told));
+            double dc = Math.cos(omega * step);
+            double ds = Math.sin(omega * step);
+            for (; i < n && secs < t; i++, secs += step) {
+                out[off + i] = (float) (amp * c + mn);
+                double cn = c * dc - s * ds;
+                s = s * dc + c * ds;
+                c = cn;
+                inside++;
+            }
+            //move on to the segment holding secs, which can skip several if step is large
+            while (k < times.length && times[k] <= secs)
+                k++;
+        }
+        return inside;
+    }
+
+    /** Angular frequency in radians per second of the half cosine between tide k-1 and tide k */
+    public double segmentOmega(int k) {
+        return 2 * Math.PI / ((times[k] - times[k - 1]) * 2);
+    }
+}
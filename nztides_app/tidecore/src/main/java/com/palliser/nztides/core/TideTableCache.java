@@ -0,0 +1,103 @@
+package com.palliser.nztides.core;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of decoded tide tables keyed by port name, or by port
+ * and window for tables of part of a port, so flipping between a few ports doesn't
+ * decode them again every time.
+ *
+ * Tables are evicted oldest first once their total size goes over the memory budget.
+ * The most recently loaded table is always kept, even if it is bigger than the budget
+ * on its own. Hit, miss and eviction counts are kept for tuning the budget.
+ */
+public final class TideTableCache {
+
+    /** Source of tables for ports that aren't in the cache */
+    public interface Loader {
+        TideTable load(String port) throws IOException;
+    }
+
+    private final LinkedHashMap<String, TideTable> tables = new LinkedHashMap<String, TideTable>(16, 0.75f, true);
+    private final long budget;
+    private long used;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** Cache holding up to budgetbytes of tables, as measured by TideTable.sizeInBytes */
+    public TideTableCache(long budgetbytes) {
+        budget = budgetbytes;
+    }
+
+    /**
+     * The table for port, from the cache if it is there and from loader if not. The
+     * loader is called without holding the cache, so a slow decode doesn't hold up
+     * other callers; if two miss the same port at once both load it and the first
+     * table put in the cache is the one kept.
+     */
+    public TideTable get(String port, Loader loader) throws IOException {
+        synchronized (this) {
+            TideTable table = tables.get(port);
+            if (table != null) {
+                hits++;
+                return table;
+            }
+            misses++;
+        }
+        TideTable table = loader.load(port);
+        synchronized (this) {
+            TideTable loaded = tables.get(port);
+            if (loaded != null)
+                return loaded;
+            tables.put(port, table);
+            used += table.sizeInBytes();
+
+            Iterator<Map.Entry<String, TideTable>> it = tables.entrySet().iterator();
+            while (used > budget && tables.size() > 1) {
+                used -= it.next().getValue().sizeInBytes();
+                it.remove();
+                evictions++;
+            }
+            return table;
+        }
+    }
+
+    public synchronized void clear() {
+        tables.clear();
+        used = 0;
+    }
+
+    public synchronized int size() {
+        return tables.size();
+    }
+
+    public synchronized long usedBytes() {
+        return used;
+    }
+
+    public long budgetBytes() {
+        return budget;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TideTableCache[" + tables.size() + " ports, " + used + "/" + budget + " bytes, "
+                + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+}
@@ -0,0 +1,434 @@
+package com.palliser.nztides.core;
+
+import java.io.EOFException;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds the text shown on the main screen: the current height and rate, the time to
+ * the nearest tide, an ascii art graph and the list of upcoming tides.
+ *
+ * The text is written into a StringBuilder that is reused from one render to the next,
+ * with hand rolled fixed point heights and "HH:mm E dd/MM/yy zzz" dates, so once warmed
+ * up a render doesn't allocate. Local times come from a ZoneTable, normally the one
+ * the tide database carries, rather than a Calendar. The output is the same as
+ * DecimalFormat and SimpleDateFormat give for the zone and locale the renderer was
+ * made for. An instance isn't thread safe.
+ */
+public final class TideText {
+
+	/** Number of tides listed after the current pair */
+	public static final int NUM_LISTED = 35 * 4;
+
+	private static final int NUM_ROWS = 8;
+	private static final int NUM_COLS = 34;
+
+	/** Predicted tides start this far before now so the current pair is included */
+	private static final int PREDICTED_LEAD = 86400;
+	/** and run on for up to this long, comfortably more than NUM_LISTED tides */
+	private static final int PREDICTED_SPAN = 80 * 86400;
+
+	private final StringBuilder outstring = new StringBuilder(8192);
+	private final char[] graph = new char[NUM_ROWS * (NUM_COLS + 1)];
+	private final int[] predictedtimes = new int[NUM_LISTED + 16];
+	private final short[] predictedheights = new short[NUM_LISTED + 16];
+	private final TideTable predicted = new TideTable(predictedtimes, predictedheights);
+
+	//the list of tides from the last render, reused while the port and pair of tides are the same
+	private final StringBuilder listed = new StringBuilder(8192);
+	private TideTable listedtable;
+	private int listednext = -1;
+	private String listedport;
+
+	private final ZoneTable zone;
+	private final Locale locale;
+	private final String[] weekdays;
+	private final String stdname;
+	private final String dstname;
+	private final char zero;
+	private final char point;
+	private final String minus;
+	private boolean asciigraph = true;
+	private int filelasttide;
+	private int predictionminutes;
+	private int predictioncm;
+
+	/** Renderer for the device's time zone and locale */
+	public TideText() {
+		this(TimeZone.getDefault(), Locale.getDefault());
+	}
+
+	/** Renderer for a TimeZone, whose offsets are tabulated once up front */
+	public TideText(TimeZone zone, Locale locale) {
+		this(ZoneTable.derive(zone, 0, Integer.MAX_VALUE), zone, locale);
+	}
+
+	/** Renderer for the offsets in zone, eg TideDatabase.zone(), and locale */
+	public TideText(ZoneTable zone, Locale locale) {
+		this(zone, TimeZone.getTimeZone(zone.id()), locale);
+	}
+
+	private TideText(ZoneTable zone, TimeZone names, Locale locale) {
+		this.zone = zone;
+		this.locale = locale;
+		weekdays = new DateFormatSymbols(locale).getShortWeekdays();
+		stdname = names.getDisplayName(false, TimeZone.SHORT, locale);
+		dstname = names.getDisplayName(true, TimeZone.SHORT, locale);
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+		zero = symbols.getZeroDigit();
+		point = symbols.getDecimalSeparator();
+		//the minus sign can carry bidi marks in some locales, so take the whole prefix
+		minus = new DecimalFormat("0;-0", symbols).getNegativePrefix();
+	}
+
+	/** Whether to draw the ascii art graph, which can be left out when the curve is drawn properly */
+	public void setAsciiGraph(boolean on) {
+		asciigraph = on;
+	}
+
+	/**
+	 * Time of the last tide in the data file, for when tables only hold part of it,
+	 * or 0 to take it from the end of the table.
+	 */
+	public void setLastTide(int secs) {
+		filelasttide = secs;
+	}
+
+	/**
+	 * How far out predicted tides were found to be when the constituents were fitted,
+	 * eg ConstituentDatabase.minutesOut and centimetresOut, for the predicted footer.
+	 */
+	public void setPredictionError(int minutes, int centimetres) {
+		predictionminutes = minutes;
+		predictioncm = centimetres;
+	}
+
+	/** True if this renderer formats dates and numbers for the given zone and locale */
+	public boolean isFor(TimeZone zone, Locale locale) {
+		return this.zone.id().equals(zone.getID()) && this.locale.equals(locale);
+	}
+
+	/** True if this renderer formats dates with the given zone table and numbers for locale */
+	public boolean isFor(ZoneTable zone, Locale locale) {
+		return this.zone == zone && this.locale.equals(locale);
+	}
+
+	/**
+	 * Render the screen for port at time nowsecs (seconds since 1970).
+	 * The returned text is only valid until the next call.
+	 * Throws EOFException if the table runs out before the list of tides is complete.
+	 */
+	public CharSequence render(String port, TideTable table, int nowsecs) throws EOFException {
+		return render(port, table, nowsecs, false);
+	}
+
+	/**
+	 * Render the screen for port at the cursor's time, for updating the screen as time
+	 * passes. While the cursor stays between the same pair of tides only the lines
+	 * above the list are rebuilt. The returned text is only valid until the next call.
+	 * Throws EOFException if the table runs out before the list of tides is complete.
+	 */
+	public CharSequence render(String port, TideCursor cursor) throws EOFException {
+		return render(port, cursor.table(), cursor.time(), cursor.index(), false);
+	}
+
+	/**
+	 * Render the screen for port at time nowsecs from tides predicted by model, for
+	 * when the tide table doesn't cover nowsecs or runs out too soon.
+	 * The returned text is only valid until the next call.
+	 */
+	public CharSequence renderPredicted(String port, HarmonicModel model, int nowsecs) throws EOFException {
+		int n = model.extremes(nowsecs - PREDICTED_LEAD, nowsecs + PREDICTED_SPAN, predictedtimes, predictedheights);
+		if (n < predictedtimes.length)
+			throw new EOFException("too few predicted tides");
+		return render(port, predicted, nowsecs, true);
+	}
+
+	/** Render in full, the list is only reused from one cursor render to the next */
+	private CharSequence render(String port, TideTable table, int nowsecs, boolean predictions) throws EOFException {
+		listedtable = null;
+		long started = TideMetrics.SEARCH.start();
+		int next = table.nextExtremum(nowsecs);
+		TideMetrics.SEARCH.stop(started);
+		TideMetrics.BINARY_SEARCHES.increment();
+		TideMetrics.RECORDS_SEARCHED.add(32 - Integer.numberOfLeadingZeros(table.size()));
+		return render(port, table, nowsecs, next, predictions);
+	}
+
+	/** Render with next, the index of the first tide after nowsecs, already known */
+	private CharSequence render(String port, TideTable table, int nowsecs, int next, boolean predictions)
+			throws EOFException {
+		long started = TideMetrics.TEXT.start();
+		try {
+			return build(port, table, nowsecs, next, predictions);
+		} finally {
+			TideMetrics.TEXT.stop(started);
+		}
+	}
+
+	private CharSequence build(String port, TideTable table, int nowsecs, int next, boolean predictions)
+			throws EOFException {
+		outstring.setLength(0);
+
+		//timestamp for last tide in datafile
+		int lasttide = filelasttide != 0 ? filelasttide : table.lastTime();
+
+		if (table.time(0) > nowsecs) {
+			outstring.append("The first tide in this datafile doesn't occur until ");
+			appendDate(table.time(0));
+			outstring.append(". The app should start working properly about then.");
+			return outstring;
+		}
+
+		if (next <= 0 || next + NUM_LISTED >= table.size())
+			throw new EOFException("not enough tides left in datafile");
+		int told = table.time(next - 1);
+		float hold = table.height(next - 1);
+		int t = table.time(next);
+		float h = table.height(next);
+
+		//frequency of the cosine wave used to interpolate between tides
+		double omega = table.segmentOmega(next);
+		double x, phase;
+
+		// make ascii art plot
+		if (asciigraph) {
+			for (int k = 0; k < NUM_ROWS; k++) {
+				for (int j = 0; j < NUM_COLS; j++) {
+					graph[k * (NUM_COLS + 1) + j] = ' ';
+				}
+				graph[k * (NUM_COLS + 1) + NUM_COLS] = '\n';
+			}
+
+			for (int k = 0; k < NUM_COLS; k++) {
+				x = (1.0 + (hold > h ? -1 : 1) * Math.sin(k * 2 * Math.PI / (NUM_COLS - 1))) / 2.0;
+				x = ((NUM_ROWS - 1) * x + 0.5);
+				graph[(int) x * (NUM_COLS + 1) + k] = '*';
+			}
+
+			phase = omega * (nowsecs - told);
+			x = (phase + Math.PI / 2) / (2.0 * Math.PI);
+			x = ((NUM_COLS - 1) * x + 0.5);
+			for (int j = 0; j < NUM_ROWS; j++) {
+				graph[j * (NUM_COLS + 1) + (int) x] = '|';
+			}
+		}
+
+		long interpolating = TideMetrics.INTERPOLATE.start();
+		double currentht = table.segmentHeight(next, nowsecs);
+		double riserate = table.segmentRate(next, nowsecs);
+		TideMetrics.INTERPOLATE.stop(interpolating);
+
+		//Start populating outstring
+		outstring.append('[').append(port).append("] ");
+		appendFixed(currentht, 1, true);
+		outstring.append('m');
+		//display up arrow or down arrow depending on weather tide is rising or falling
+		if (hold < h)
+			outstring.append(" \u2191");//up arrow
+		else
+			outstring.append(" \u2193");//down arrow
+
+		appendFixed(Math.abs(riserate), 2, false);
+		outstring.append("m/hr\n");
+		outstring.append("---------------\n");
+
+		int time_to_previous = (nowsecs - told);
+		int time_to_next = (t - nowsecs);
+		boolean hightidenext = (h > hold);
+
+		if (time_to_previous < time_to_next) {
+			outstring.append(hightidenext ? "Low tide (" : "High tide (");
+			appendMetres(table.heightCm(next - 1));
+			outstring.append("m) ");
+			appendHoursMinutes(time_to_previous);
+			outstring.append("m ago\n");
+		} else {
+			outstring.append(hightidenext ? "High tide (" : "Low tide (");
+			appendMetres(table.heightCm(next));
+			outstring.append("m) in ");
+			appendHoursMinutes(time_to_next);
+			outstring.append("m\n");
+		}
+		outstring.append("\n");
+		if (asciigraph) {
+			outstring.append(graph);
+			outstring.append("\n");
+		}
+
+		if (table == listedtable && next == listednext && port.equals(listedport)) {
+			TideMetrics.LIST_REUSED.increment();
+			outstring.append(listed);
+			return outstring;
+		}
+		int liststart = outstring.length();
+
+		hightidenext = !hightidenext;
+		appendTide(table, next - 1, hightidenext);
+		hightidenext = !hightidenext;
+		appendTide(table, next, hightidenext);
+
+		for (int k = 0; k < NUM_LISTED; k++) {
+			hightidenext = !hightidenext;
+			appendTide(table, next + 1 + k, hightidenext);
+		}
+		if (predictions) {
+			outstring.append("These tides are predicted from harmonic constituents fitted to the LINZ tables.");
+			outstring.append(" Checked against a year of those tables they were out by about ");
+			appendLong(predictionminutes);
+			outstring.append(predictionminutes == 1 ? " minute and " : " minutes and ");
+			appendLong(predictioncm);
+			outstring.append(" cm.");
+		} else {
+			outstring.append("The last tide in this datafile occurs at:\n");
+			appendDate(lasttide);
+		}
+
+		listed.setLength(0);
+		listed.append(outstring, liststart, outstring.length());
+		//the predicted table is refilled in place, so its list can't be reused
+		listedtable = predictions ? null : table;
+		listednext = next;
+		listedport = port;
+		return outstring;
+	}
+
+	/** One line of the tide list, eg " 3.20 H 09:23 We 01/01/25 NZDT" */
+	private void appendTide(TideTable table, int k, boolean high) {
+		appendFixed(table.height(k), 2, true);
+		outstring.append(high ? " H " : " L ");
+		appendDate(table.time(k));
+		outstring.append('\n');
+	}
+
+	/** Height the way Float.toString prints a whole number of centimetres, eg 0.7 or -0.15 */
+	private void appendMetres(short cm) {
+		int a = cm;
+		if (a < 0) {
+			outstring.append('-');
+			a = -a;
+		}
+		outstring.append(a / 100).append('.');
+		int frac = a % 100;
+		if (frac % 10 == 0) {
+			outstring.append((char) ('0' + frac / 10));
+		} else {
+			outstring.append((char) ('0' + frac / 10));
+			outstring.append((char) ('0' + frac % 10));
+		}
+	}
+
+	/** Seconds as hours then two digit minutes, eg 2h05 */
+	private void appendHoursMinutes(int secs) {
+		outstring.append(secs / 3600).append('h');
+		appendDigits((secs / 60) % 60, 2);
+	}
+
+	/**
+	 * Same as DecimalFormat(" 0.0;-0.0") for one decimal or ("0.00") for two, which round
+	 * half even on the exact binary value of v. The product v*10^decimals is carried
+	 * as an unevaluated sum so rounding near a half goes the same way.
+	 */
+	private void appendFixed(double v, int decimals, boolean signcolumn) {
+		boolean neg = v < 0 || (v == 0 && 1 / v < 0);
+		double a = Math.abs(v);
+		double scale = decimals == 1 ? 10 : 100;
+		double p = a * scale;
+		double e = productError(a, scale, p);
+		double fl = Math.floor(p);
+		double d = ((p - fl) - 0.5) + e;
+		long n = (long) fl;
+		if (d > 0 || (d == 0 && (n & 1) != 0))
+			n++;
+
+		if (neg)
+			outstring.append(minus);
+		else if (signcolumn)
+			outstring.append(' ');
+		long whole = n / (long) scale;
+		int frac = (int) (n % (long) scale);
+		if (whole == 0)
+			outstring.append(zero);
+		else
+			appendLong(whole);
+		outstring.append(point);
+		appendDigits(frac, decimals);
+	}
+
+	/** Date and time in the form HH:mm E dd/MM/yy zzz */
+	private void appendDate(int secs) {
+		int offset = zone.offset(secs);
+		long local = secs + (long) offset;
+		long days = local / 86400;
+		if (local % 86400 < 0)
+			days--;
+		int sod = (int) (local - days * 86400);
+
+		appendDigits(sod / 3600, 2);
+		outstring.append(':');
+		appendDigits((sod / 60) % 60, 2);
+		outstring.append(' ');
+		//1970-01-01 was a Thursday, weekdays is indexed by Calendar.SUNDAY=1 and so on
+		int dow = (int) ((days + 4) % 7);
+		if (dow < 0)
+			dow += 7;
+		outstring.append(weekdays[dow + 1]);
+		outstring.append(' ');
+
+		//civil date from days since 1970, see http://howardhinnant.github.io/date_algorithms.html
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int d = doy - (153 * mp + 2) / 5 + 1;
+		int m = mp < 10 ? mp + 3 : mp - 9;
+		long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+		appendDigits(d, 2);
+		outstring.append('/');
+		appendDigits(m, 2);
+		outstring.append('/');
+		appendDigits((int) (y % 100), 2);
+		outstring.append(' ');
+		outstring.append(offset != zone.rawOffset() ? dstname : stdname);
+	}
+
+	/** Zero padded digits in the locale's digit characters */
+	private void appendDigits(int v, int width) {
+		int div = 1;
+		for (int k = 1; k < width; k++)
+			div *= 10;
+		while (div > v && div > 1) {
+			outstring.append(zero);
+			div /= 10;
+		}
+		for (; div > 0; div /= 10) {
+			outstring.append((char) (zero + (v / div) % 10));
+		}
+	}
+
+	private void appendLong(long v) {
+		long div = 1;
+		while (div <= v / 10)
+			div *= 10;
+		for (; div > 0; div /= 10) {
+			outstring.append((char) (zero + (int) ((v / div) % 10)));
+		}
+	}
+
+	/** The exact error a*b - p of the product p = a*b, using Dekker's splitting */
+	private static double productError(double a, double b, double p) {
+		double ca = 134217729.0 * a;
+		double ahi = ca - (ca - a);
+		double alo = a - ahi;
+		double cb = 134217729.0 * b;
+		double bhi = cb - (cb - b);
+		double blo = b - bhi;
+		return ((ahi * bhi - p) + ahi * blo + alo * bhi) + alo * blo;
+	}
+}
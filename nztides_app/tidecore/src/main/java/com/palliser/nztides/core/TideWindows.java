@@ -0,0 +1,109 @@
+package com.palliser.nztides.core;
+
+/**
+ * Finds the windows of time when the tide is above (or below) a height, eg when
+ * there is enough water to launch a boat or cross a bar.
+ *
+ * Between two tides the height follows the half cosine TideTable interpolates with,
+ * which only ever rises or only ever falls, so it crosses a height at most once and
+ * the crossing can be solved for directly with acos. A query walks the tides in
+ * the range once, solving only the segments where the tide goes from one side of
+ * the height to the other; nothing is sampled. Windows are passed to a Sink as they
+ * are found. Times are seconds since 1970, rounded to the nearest second.
+ */
+public final class TideWindows {
+
+    /** Receives the windows found, in time order for each port */
+    public interface Sink {
+        /** The tide is on the wanted side of the height from start until end */
+        void window(int port, int start, int end);
+    }
+
+    private TideWindows() {
+    }
+
+    /**
+     * Report the windows from from up to to when table's tide is above height metres
+     * (or below it if above is false), tagged with port. A window that is open at
+     * from or to is cut off there. Only the part of the range the table covers is
+     * searched. Returns the number of windows.
+     */
+    public static int find(TideTable table, double height, boolean above, int from, int to, int port, Sink sink) {
+        int n = table.size();
+        if (n < 2)
+            return 0;
+        from = Math.max(from, table.firstTime());
+        to = Math.min(to, table.lastTime());
+        if (from >= to)
+            return 0;
+
+        int count = 0;
+        int k = Math.max(1, table.indexAfter(from));
+        boolean inside = on(table.segmentHeight(k, from), height, above);
+        int start = from;
+        for (; k < n; k++) {
+            int segstart = Math.max(table.time(k - 1), from);
+            int segend = Math.min(table.time(k), to);
+            double hend = segend == table.time(k) ? table.height(k) : table.segmentHeight(k, segend);
+            if (on(hend, height, above) != inside) {
+                int t = crossing(table, k, height, segstart, segend);
+                if (inside) {
+                    if (t > start) {
+                        sink.window(port, start, t);
+                        count++;
+                    }
+                } else {
+                    start = t;
+                }
+                inside = !inside;
+            }
+            if (segend >= to)
+                break;
+        }
+        if (inside && to > start) {
+            sink.window(port, start, to);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Find the windows for every table in turn, tables[p] being reported as port p.
+     * Null tables are skipped. Returns the total number of windows.
+     */
+    public static int find(TideTable[] tables, double height, boolean above, int from, int to, Sink sink) {
+        int count = 0;
+        for (int p = 0; p < tables.length; p++) {
+            if (tables[p] != null)
+                count += find(tables[p], height, above, from, to, p, sink);
+        }
+        return count;
+    }
+
+    /**
+     * Find the windows for every port in db, decoding one port at a time so only one
+     * table is held at once. Returns the total number of windows.
+     */
+    public static int find(TideDatabase db, double height, boolean above, int from, int to, Sink sink) {
+        int count = 0;
+        for (int p = 0; p < db.numPorts(); p++)
+            count += find(db.table(p), height, above, from, to, p, sink);
+        return count;
+    }
+
+    private static boolean on(double h, double height, boolean above) {
+        return above ? h > height : h < height;
+    }
+
+    /** Time in segment k, clamped to lo..hi, when the cosine reaches height */
+    private static int crossing(TideTable table, int k, double height, int lo, int hi) {
+        int told = table.time(k - 1);
+        float hold = table.height(k - 1);
+        float h = table.height(k);
+        double amp = (hold - h) / 2;
+        double mn = (h + hold) / 2;
+        double c = Math.max(-1, Math.min(1, (height - mn) / amp));
+        long t = told + Math.round(Math.acos(c) / table.segmentOmega(k));
+        return (int) Math.max(lo, Math.min(hi, t));
+    }
+}
@@ -0,0 +1,138 @@
+package com.palliser.nztides.core;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * The offsets from UTC of one time zone as a table of the instants they change,
+ * for turning times into local dates and times without a Calendar.
+ *
+ * Looking up an offset is a binary search of a few dozen ints, so it doesn't
+ * allocate and doesn't depend on the device's copy of the zone rules. The tide
+ * database carries the New Zealand table the tides were converted with, see
+ * TideDatabase.zone(). A table is immutable and thread safe.
+ */
+public final class ZoneTable {
+
+    private final String id;
+    private final int rawoffset;
+    private final int[] transitions;
+    private final int[] offsets;
+
+    /**
+     * Zone id (eg Pacific/Auckland) with standard offset rawoffset seconds east of UTC.
+     * offsets[k] (seconds) is in force from instant transitions[k] (seconds since 1970)
+     * until the next, transitions[0] being Integer.MIN_VALUE. The arrays are used as
+     * is, not copied.
+     */
+    public ZoneTable(String id, int rawoffset, int[] transitions, int[] offsets) {
+        if (transitions.length == 0 || transitions.length != offsets.length)
+            throw new IllegalArgumentException("transitions and offsets differ in length");
+        if (transitions[0] != Integer.MIN_VALUE)
+            throw new IllegalArgumentException("the first transition must be Integer.MIN_VALUE");
+        this.id = id;
+        this.rawoffset = rawoffset;
+        this.transitions = transitions;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Table of the changes of zone between from and to (seconds since 1970), found
+     * with TimeZone.getOffset. Before from and after to the offsets at from and to
+     * carry on.
+     */
+    public static ZoneTable derive(TimeZone zone, int from, int to) {
+        //no zone changes offset twice in a week, so step a week and bisect each change down to the second
+        final int step = 7 * 86400;
+        int n = 1;
+        int[] times = new int[64];
+        int[] offs = new int[64];
+        times[0] = Integer.MIN_VALUE;
+        offs[0] = offsetOf(zone, from);
+        long t = from;
+        while (t < to) {
+            long next = Math.min(t + step, (long) to);
+            int o = offsetOf(zone, next);
+            if (o != offs[n - 1]) {
+                long lo = t, hi = next;
+                while (hi - lo > 1) {
+                    long mid = (lo + hi) >>> 1;
+                    if (offsetOf(zone, mid) == o)
+                        hi = mid;
+                    else
+                        lo = mid;
+                }
+                if (n == times.length) {
+                    times = Arrays.copyOf(times, 2 * n);
+                    offs = Arrays.copyOf(offs, 2 * n);
+                }
+                times[n] = (int) hi;
+                offs[n] = o;
+                n++;
+            }
+            t = next;
+        }
+        return new ZoneTable(zone.getID(), zone.getRawOffset() / 1000,
+                Arrays.copyOf(times, n), Arrays.copyOf(offs, n));
+    }
+
+    private static int offsetOf(TimeZone zone, long secs) {
+        return zone.getOffset(1000 * secs) / 1000;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /** Standard (not daylight saving) offset in seconds east of UTC */
+    public int rawOffset() {
+        return rawoffset;
+    }
+
+    /** Number of offsets in the table, one more than the number of changes */
+    public int size() {
+        return transitions.length;
+    }
+
+    /** Instant (seconds since 1970) offset k comes into force, Integer.MIN_VALUE for the first */
+    public int transition(int k) {
+        return transitions[k];
+    }
+
+    /** Offset k in seconds east of UTC */
+    public int offsetAt(int k) {
+        return offsets[k];
+    }
+
+    /** Offset from UTC in seconds at secs (seconds since 1970) */
+    public int offset(int secs) {
+        int lo = 0, hi = transitions.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (transitions[mid] <= secs)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return offsets[lo];
+    }
+
+    /** True if daylight saving is in force at secs */
+    public boolean isDaylight(int secs) {
+        return offset(secs) != rawoffset;
+    }
+
+    /** Local time at secs as seconds since 1970 on a local clock */
+    public long local(int secs) {
+        return secs + (long) offset(secs);
+    }
+
+    /** Local day number at secs, days since 1970-01-01, for grouping tides by day */
+    public int localDay(int secs) {
+        long local = local(secs);
+        long days = local / 86400;
+        if (local % 86400 < 0)
+            days--;
+        return (int) days;
+    }
+}
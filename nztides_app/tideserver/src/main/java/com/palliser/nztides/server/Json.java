@@ -0,0 +1,49 @@
+package com.palliser.nztides.server;
+
+/**
+ * The little bits of JSON writing the server needs, appending straight to the
+ * response rather than going through a library.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /** s as a quoted JSON string */
+    static void string(StringBuilder out, String s) {
+        out.append('"');
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00");
+                out.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /** v rounded to decimals places, null if it is NaN or infinite */
+    static void number(StringBuilder out, double v, int decimals) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            out.append("null");
+            return;
+        }
+        long scale = 1;
+        for (int k = 0; k < decimals; k++)
+            scale *= 10;
+        long n = Math.round(Math.abs(v) * scale);
+        if (v < 0 && n != 0)
+            out.append('-');
+        out.append(n / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long frac = n % scale;
+            for (long div = scale / 10; div > 0; div /= 10)
+                out.append((char) ('0' + frac / div % 10));
+        }
+    }
+}
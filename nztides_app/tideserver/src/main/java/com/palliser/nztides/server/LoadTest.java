@@ -0,0 +1,197 @@
+package com.palliser.nztides.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.palliser.nztides.core.TideDatabase;
+
+/**
+ * Load test for TideServer. Starts a server on a free localhost port and drives it
+ * from a number of keep-alive connections, each sending a mix of /now, /extremes
+ * and /batch requests back to back, then reports the request rate, latency
+ * percentiles and the heap in use after a GC before and after the run.
+ *
+ * The client side is plain sockets writing requests and reading back the
+ * Content-Length of the response, so it costs far less than the server and the
+ * numbers are the server's.
+ *
+ * usage: LoadTest tides.tdb [connections] [seconds]
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("usage: LoadTest tides.tdb [connections] [seconds]");
+            System.exit(2);
+        }
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        TideDatabase db = TideServer.open(args[0]);
+        TideServer server = new TideServer(db, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        String[] paths = requestMix(db, 4096);
+
+        //a short warm up so the JIT has compiled the server before anything is counted
+        run(server.port(), paths, connections, 2, null);
+        long[] latencies = new long[1 << 22];
+        long heapBefore = usedHeapAfterGc();
+        Result r = run(server.port(), paths, connections, seconds, latencies);
+        long heapAfter = usedHeapAfterGc();
+        server.stop();
+
+        long[] sorted = Arrays.copyOf(latencies, (int) Math.min(r.requests, latencies.length));
+        Arrays.sort(sorted);
+        System.out.printf("%d connections, %d s: %d requests, %d errors, %.0f requests/s%n",
+                connections, seconds, r.requests, r.errors, r.requests / (r.nanos / 1e9));
+        System.out.printf("latency p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length > 0 ? sorted[sorted.length - 1] / 1000 : 0);
+        System.out.printf("heap in use after gc: %d KB before, %d KB after%n", heapBefore / 1024, heapAfter / 1024);
+        if (r.errors > 0)
+            System.exit(1);
+    }
+
+    /** Paths to request, about 70% /now, 20% a week of /extremes and 10% /batch of a few ports */
+    static String[] requestMix(TideDatabase db, int n) {
+        Random rnd = new Random(42);
+        int time = db.table(0).firstTime() + 86400;
+        String[] paths = new String[n];
+        for (int k = 0; k < n; k++) {
+            String port = encode(db.portName(rnd.nextInt(db.numPorts())));
+            int t = time + rnd.nextInt(300 * 86400);
+            int pick = rnd.nextInt(10);
+            if (pick < 7) {
+                paths[k] = "/now?port=" + port + "&time=" + t;
+            } else if (pick < 9) {
+                paths[k] = "/extremes?port=" + port + "&from=" + t + "&to=" + (t + 7 * 86400);
+            } else {
+                StringBuilder ports = new StringBuilder(port);
+                for (int j = 0; j < 4; j++)
+                    ports.append(',').append(encode(db.portName(rnd.nextInt(db.numPorts()))));
+                paths[k] = "/batch?ports=" + ports + "&time=" + t;
+            }
+        }
+        return paths;
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    static final class Result {
+        long requests;
+        long errors;
+        long nanos;
+    }
+
+    /**
+     * Send requests from paths on connections sockets for seconds, recording each
+     * latency in nanoseconds in latencies (if not null and while there is room).
+     */
+    static Result run(int port, String[] paths, int connections, int seconds, long[] latencies)
+            throws InterruptedException {
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong slot = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        Thread[] threads = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            final int offset = c * 997;
+            threads[c] = new Thread(() -> {
+                try (Socket socket = new Socket()) {
+                    socket.setTcpNoDelay(true);
+                    socket.connect(new InetSocketAddress("127.0.0.1", port));
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 4096);
+                    InputStream in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+                    byte[] body = new byte[1 << 16];
+                    for (int k = offset; System.nanoTime() < end; k++) {
+                        long sent = System.nanoTime();
+                        String path = paths[k % paths.length];
+                        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        if (readResponse(in, body) != 200)
+                            errors.incrementAndGet();
+                        long took = System.nanoTime() - sent;
+                        requests.incrementAndGet();
+                        if (latencies != null) {
+                            long s = slot.getAndIncrement();
+                            if (s < latencies.length)
+                                latencies[(int) s] = took;
+                        }
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        Result r = new Result();
+        r.requests = requests.get();
+        r.errors = errors.get();
+        r.nanos = System.nanoTime() - start;
+        return r;
+    }
+
+    /** Read one response, returning its status code */
+    private static int readResponse(InputStream in, byte[] body) throws IOException {
+        int status = -1;
+        int length = 0;
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            line.setLength(0);
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0)
+                    throw new IOException("connection closed");
+                if (c != '\r')
+                    line.append((char) c);
+            }
+            if (line.length() == 0)
+                break;
+            if (status < 0) {
+                status = Integer.parseInt(line.substring(9, 12));
+            } else if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        while (length > 0) {
+            int n = in.read(body, 0, Math.min(length, body.length));
+            if (n < 0)
+                throw new IOException("connection closed");
+            length -= n;
+        }
+        return status;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0)
+            return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (q * sorted.length))] / 1000;
+    }
+}
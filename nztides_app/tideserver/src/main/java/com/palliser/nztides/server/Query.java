@@ -0,0 +1,48 @@
+package com.palliser.nztides.server;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The parameters of a request's query string, percent decoded. A parameter given
+ * more than once keeps its last value.
+ */
+final class Query {
+
+    private static final Query EMPTY = new Query(new HashMap<>());
+
+    private final HashMap<String, String> params;
+
+    private Query(HashMap<String, String> params) {
+        this.params = params;
+    }
+
+    static Query parse(String raw) throws TideServer.HttpError {
+        if (raw == null || raw.isEmpty())
+            return EMPTY;
+        HashMap<String, String> params = new HashMap<>();
+        int start = 0;
+        while (start < raw.length()) {
+            int amp = raw.indexOf('&', start);
+            int end = amp < 0 ? raw.length() : amp;
+            int eq = raw.indexOf('=', start);
+            try {
+                if (eq < 0 || eq > end)
+                    params.put(URLDecoder.decode(raw.substring(start, end), StandardCharsets.UTF_8), "");
+                else
+                    params.put(URLDecoder.decode(raw.substring(start, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(raw.substring(eq + 1, end), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new TideServer.HttpError(400, "bad query string");
+            }
+            start = end + 1;
+        }
+        return new Query(params);
+    }
+
+    /** The value of name, null if it wasn't given */
+    String get(String name) {
+        return params.get(name);
+    }
+}
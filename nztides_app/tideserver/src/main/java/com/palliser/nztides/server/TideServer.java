@@ -0,0 +1,342 @@
+package com.palliser.nztides.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.palliser.nztides.core.PortBatch;
+import com.palliser.nztides.core.PortStates;
+import com.palliser.nztides.core.TideDatabase;
+import com.palliser.nztides.core.TideTable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves tide queries over HTTP as JSON, straight from tides.tdb.
+ *
+ * Every port's table is decoded once at start up and shared read only by all
+ * requests, so a request is a binary search or two and some formatting. Requests
+ * run on virtual threads when the JVM has them (21 and later) and on a small fixed
+ * pool otherwise. Endpoints, all GET:
+ * <pre>
+ *   /ports                          every port with its station position and data span
+ *   /now?port=P[&amp;time=T]            height, rate and next high and low at P
+ *   /extremes?port=P&amp;from=F&amp;to=T    the high and low tides at P from F up to T
+ *   /batch[?ports=P1,P2...][&amp;time=T] /now for several ports, every port if none given
+ * </pre>
+ * Times are seconds since 1970 or UTC dates (yyyy-mm-dd), and default to now. Heights
+ * are metres and rates metres per hour. Errors are a status code and {"error":...}.
+ *
+ * usage: TideServer tides.tdb [port]
+ */
+public final class TideServer {
+
+    /** The longest range /extremes answers, which keeps responses to a few hundred KB */
+    static final int MAX_EXTREMES_SPAN = 400 * 86400;
+
+    private static final System.Logger LOG = System.getLogger(TideServer.class.getName());
+
+    private final TideDatabase db;
+    private final PortBatch batch;
+    private final TideTable[] tables;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    /** A server for db listening on address, not yet started */
+    public TideServer(TideDatabase db, InetSocketAddress address) throws IOException {
+        this.db = db;
+        //the batch decodes tables on first use, do them all now rather than on a request
+        batch = new PortBatch(db);
+        tables = new TideTable[db.numPorts()];
+        for (int p = 0; p < tables.length; p++)
+            tables[p] = batch.table(p);
+
+        //without TCP_NODELAY small responses on a keep-alive connection wait out the client's delayed ack
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        executor = newExecutor();
+        http = HttpServer.create(address, 1024);
+        http.setExecutor(executor);
+        http.createContext("/ports", exchange -> handle(exchange, this::ports));
+        http.createContext("/now", exchange -> handle(exchange, this::now));
+        http.createContext("/extremes", exchange -> handle(exchange, this::extremes));
+        http.createContext("/batch", exchange -> handle(exchange, this::batch));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: TideServer tides.tdb [port]");
+            System.exit(2);
+        }
+        TideServer server = new TideServer(open(args[0]),
+                new InetSocketAddress(args.length > 1 ? Integer.parseInt(args[1]) : 8080));
+        server.start();
+        System.out.println("serving " + server.db.numPorts() + " ports on port " + server.port()
+                + (isVirtual() ? " on virtual threads" : ""));
+    }
+
+    /** Map a tides.tdb file */
+    static TideDatabase open(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return TideDatabase.map(ch, 0, ch.size());
+        }
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    /** Stop accepting requests, give those in progress up to a second to finish */
+    public void stop() {
+        http.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** The port the server is listening on, useful when it was created on port 0 */
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * A virtual thread per task executor if the JVM has them. Looked up by reflection
+     * so the server builds and runs on java 17 too.
+     */
+    static ExecutorService newExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    private static boolean isVirtual() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** Thrown by an endpoint to answer with an error */
+    static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    interface Endpoint {
+        /** Append the JSON answer to the query to out */
+        void answer(Query query, StringBuilder out) throws HttpError;
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        int status = 200;
+        StringBuilder out = new StringBuilder(256);
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()))
+                throw new HttpError(405, "only GET is supported");
+            endpoint.answer(Query.parse(exchange.getRequestURI().getRawQuery()), out);
+        } catch (HttpError e) {
+            status = e.status;
+            out.setLength(0);
+            out.append("{\"error\":");
+            Json.string(out, e.getMessage());
+            out.append('}');
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.ERROR, "failed answering " + exchange.getRequestURI(), e);
+            status = 500;
+            out.setLength(0);
+            out.append("{\"error\":\"internal error\"}");
+        }
+        out.append('\n');
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void ports(Query query, StringBuilder out) {
+        out.append("{\"ports\":[");
+        for (int p = 0; p < tables.length; p++) {
+            if (p > 0)
+                out.append(',');
+            out.append("{\"name\":");
+            Json.string(out, db.portName(p));
+            out.append(",\"lat\":");
+            Json.number(out, db.latitude(p), 6);
+            out.append(",\"lon\":");
+            Json.number(out, db.longitude(p), 6);
+            out.append(",\"first\":").append(tables[p].size() > 0 ? tables[p].firstTime() : 0);
+            out.append(",\"last\":").append(tables[p].size() > 0 ? tables[p].lastTime() : 0);
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private void now(Query query, StringBuilder out) throws HttpError {
+        int p = port(query.get("port"));
+        int time = time(query.get("time"), now());
+        state(out, p, time);
+    }
+
+    private void batch(Query query, StringBuilder out) throws HttpError {
+        int time = time(query.get("time"), now());
+        out.append("{\"time\":").append(time).append(",\"ports\":[");
+        String ports = query.get("ports");
+        if (ports == null || ports.isEmpty()) {
+            PortStates states = batch.newStates();
+            batch.evaluate(time, states, 0, tables.length);
+            for (int p = 0; p < tables.length; p++) {
+                if (p > 0)
+                    out.append(',');
+                state(out, p, states);
+            }
+        } else {
+            int start = 0;
+            boolean first = true;
+            while (start <= ports.length()) {
+                int comma = ports.indexOf(',', start);
+                int end = comma < 0 ? ports.length() : comma;
+                int p = port(ports.substring(start, end));
+                if (!first)
+                    out.append(',');
+                first = false;
+                state(out, p, time);
+                start = end + 1;
+            }
+        }
+        out.append("]}");
+    }
+
+    private void extremes(Query query, StringBuilder out) throws HttpError {
+        int p = port(query.get("port"));
+        int from = time(query.get("from"), now());
+        int to = time(query.get("to"), from + 7 * 86400);
+        if (to < from)
+            throw new HttpError(400, "to is before from");
+        if ((long) to - from > MAX_EXTREMES_SPAN)
+            throw new HttpError(400, "at most " + MAX_EXTREMES_SPAN / 86400 + " days at a time");
+        TideTable table = tables[p];
+        out.append("{\"port\":");
+        Json.string(out, db.portName(p));
+        out.append(",\"tides\":[");
+        int k = table.indexAfter(from - 1);
+        for (boolean first = true; k < table.size() && table.time(k) < to; k++, first = false) {
+            if (!first)
+                out.append(',');
+            out.append("{\"time\":").append(table.time(k));
+            out.append(",\"type\":\"").append(table.isHigh(k) ? 'H' : 'L');
+            out.append("\",\"height\":");
+            Json.number(out, table.height(k), 2);
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private void state(StringBuilder out, int p, PortStates s) {
+        state(out, p, s.time, s.covered[p], s.height[p], s.rate[p], s.rising[p],
+                s.nextHighTime[p], s.nextHighHeight[p], s.nextLowTime[p], s.nextLowHeight[p]);
+    }
+
+    /**
+     * The state of port p at time, worked out as PortBatch does but straight from its
+     * table, so one or a few ports don't need a PortStates for every port.
+     */
+    private void state(StringBuilder out, int p, int time) {
+        TideTable table = tables[p];
+        int k = table.indexAfter(time);
+        if (k == 0 || k >= table.size()) {
+            state(out, p, time, false, Float.NaN, Float.NaN, false, 0, Float.NaN, 0, Float.NaN);
+            return;
+        }
+        boolean highnext = table.heightCm(k) > table.heightCm(k - 1);
+        int high = highnext ? k : k + 1;
+        int low = highnext ? k + 1 : k;
+        boolean hashigh = high < table.size();
+        boolean haslow = low < table.size();
+        state(out, p, time, true, (float) table.segmentHeight(k, time), (float) table.segmentRate(k, time), highnext,
+                hashigh ? table.time(high) : 0, hashigh ? table.height(high) : Float.NaN,
+                haslow ? table.time(low) : 0, haslow ? table.height(low) : Float.NaN);
+    }
+
+    private void state(StringBuilder out, int p, int time, boolean covered, float height, float rate,
+            boolean rising, int hightime, float highheight, int lowtime, float lowheight) {
+        out.append("{\"port\":");
+        Json.string(out, db.portName(p));
+        out.append(",\"time\":").append(time);
+        out.append(",\"covered\":").append(covered);
+        if (covered) {
+            out.append(",\"height\":");
+            Json.number(out, height, 3);
+            out.append(",\"rate\":");
+            Json.number(out, rate, 3);
+            out.append(",\"rising\":").append(rising);
+            if (hightime != 0) {
+                out.append(",\"nextHigh\":{\"time\":").append(hightime).append(",\"height\":");
+                Json.number(out, highheight, 2);
+                out.append('}');
+            }
+            if (lowtime != 0) {
+                out.append(",\"nextLow\":{\"time\":").append(lowtime).append(",\"height\":");
+                Json.number(out, lowheight, 2);
+                out.append('}');
+            }
+        }
+        out.append('}');
+    }
+
+    private int port(String name) throws HttpError {
+        if (name == null)
+            throw new HttpError(400, "port is missing");
+        int p = db.portIndex(name);
+        if (p < 0)
+            throw new HttpError(404, "no port called " + name);
+        return p;
+    }
+
+    private static int now() {
+        return (int) (System.currentTimeMillis() / 1000);
+    }
+
+    /** Seconds since 1970 or a UTC date, or dflt if value is null */
+    static int time(String value, int dflt) throws HttpError {
+        if (value == null || value.isEmpty())
+            return dflt;
+        try {
+            if (value.indexOf('-', 1) > 0) {
+                long secs = LocalDate.parse(value).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+                if (secs != (int) secs)
+                    throw new HttpError(400, "date out of range: " + value);
+                return (int) secs;
+            }
+            return Integer.parseInt(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new HttpError(400, "not a time: " + value);
+        }
+    }
+}
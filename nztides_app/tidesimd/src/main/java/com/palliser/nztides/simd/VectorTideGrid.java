@@ -0,0 +1,59 @@
+package com.palliser.nztides.simd;
+
+import com.palliser.nztides.core.TideGrid;
+import com.palliser.nztides.core.TideTable;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * TideGrid with each row worked out a vector of ports at a time. The ports whose
+ * segment has ended are picked out with one compare per vector and seated one by
+ * one, which happens to about one port in 37 at ten minute steps; the rest is
+ * loads, a fused multiply add for the heights and four multiplies for the rotation.
+ * Ports left over after the last whole vector are done as in TideGrid.
+ *
+ * Made through TideGrid.create, which only picks it when the vector module can be
+ * loaded.
+ */
+public final class VectorTideGrid extends TideGrid {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    /** Ints the same width as the floats so lane j of each is the same port */
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+
+    public VectorTideGrid(TideTable[] tables) {
+        super(tables);
+    }
+
+    @Override
+    public String kind() {
+        return "vector x" + FLOATS.length();
+    }
+
+    @Override
+    protected void row(int t, int step, float[] grid, int off) {
+        int lanes = FLOATS.length();
+        int upper = FLOATS.loopBound(numports);
+        int p = 0;
+        for (; p < upper; p += lanes) {
+            VectorMask<Integer> ended = IntVector.fromArray(INTS, end, p).compare(VectorOperators.LE, t);
+            if (ended.anyTrue()) {
+                for (long bits = ended.toLong(); bits != 0; bits &= bits - 1)
+                    seat(p + Long.numberOfTrailingZeros(bits), t, step, false);
+            }
+            FloatVector c = FloatVector.fromArray(FLOATS, cos, p);
+            FloatVector s = FloatVector.fromArray(FLOATS, sin, p);
+            FloatVector dc = FloatVector.fromArray(FLOATS, dcos, p);
+            FloatVector ds = FloatVector.fromArray(FLOATS, dsin, p);
+            FloatVector.fromArray(FLOATS, amp, p).fma(c, FloatVector.fromArray(FLOATS, mean, p))
+                    .intoArray(grid, off + p);
+            c.mul(dc).sub(s.mul(ds)).intoArray(cos, p);
+            s.mul(dc).add(c.mul(ds)).intoArray(sin, p);
+        }
+        row(t, step, grid, off, p, numports);
+    }
+}
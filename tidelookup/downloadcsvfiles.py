@@ -1,17 +1,16 @@
 import os
 import glob
+import email.utils
+import urllib.error
 import urllib.request
 import urllib.parse
 
-# Delete all .csv files in csvfiles directory before downloading new ones
+# Only csv files whose contents have changed are rewritten, so their modified times
+# tell BuildTideDatabase which ports it needs to read again. Files for ports or years
+# no longer in the lists below are removed at the end.
 csv_dir = 'csvfiles'
 os.makedirs(csv_dir, exist_ok=True)
 
-for f in glob.glob(os.path.join(csv_dir, '*.csv')):
-    if os.path.isfile(f):
-        os.remove(f)
-# alternatively, probably cleaner to use git: git rm "tidelookup/csvfiles/*.csv" 
-
 lines = []
 
 #takes linz csv files and turns them into binary format for android app
@@ -20,14 +19,41 @@ lines = []
 ports = ['Akaroa', 'Anakakata Bay', 'Anawhata', 'Auckland', 'Ben Gunn Wharf', 'Bluff', 'Castlepoint', 'Charleston', 'Dargaville', 'Deep Cove', 'Dog Island', 'Dunedin', 'Elaine Bay', 'Elie Bay', 'Fishing Rock - Raoul Island', 'Flour Cask Bay', 'Fresh Water Basin', 'Gisborne', 'Green Island', 'Halfmoon Bay - Oban', 'Havelock', 'Helensville', 'Huruhi Harbour', 'Jackson Bay', 'Kaikōura', 'Kaingaroa - Chatham Island', 'Kaiteriteri', 'Kaituna River Entrance', 'Kawhia', 'Korotiti Bay', 'Leigh', 'Long Island', 'Lottin Point - Wakatiri', 'Lyttelton', 'Mana Marina', 'Man o\'War Bay', 'Manu Bay', 'Māpua', 'Marsden Point', 'Matiatia Bay', 'Motuara Island', 'Moturiki Island', 'Napier', 'Nelson', 'New Brighton Pier', 'North Cape - Otou', 'Oamaru', 'Ōkukari Bay', 'Omaha Bridge', 'Ōmokoroa', 'Onehunga', 'Opononi', 'Ōpōtiki Wharf', 'Opua', 'Owenga - Chatham Island', 'Paratutae Island', 'Picton', 'Port Chalmers', 'Port Ōhope Wharf', 'Port Taranaki', 'Pouto Point', 'Raglan', 'Rangatira Point', 'Rangitaiki River Entrance', 'Richmond Bay', 'Riverton - Aparima', 'Scott Base', 'Spit Wharf', 'Sumner Head', 'Tamaki River', 'Tarakohe', 'Tauranga', 'Te Weka Bay', 'Thames', 'Timaru', 'Town Basin', 'Waihopai River Entrance', 'Waitangi - Chatham Island', 'Weiti River Entrance', 'Welcombe Bay', 'Wellington', 'Westport', 'Whakatāne', 'Whanganui River Entrance', 'Whangārei', 'Whangaroa', 'Whitianga', 'Wilson Bay']
 years = [2025,2026,2027]
 
+def fetch(url, path):
+    # ask for the file only if it has changed since ours was written
+    req = urllib.request.Request(url)
+    if os.path.isfile(path):
+        req.add_header('If-Modified-Since', email.utils.formatdate(os.path.getmtime(path), usegmt=True))
+    try:
+        with urllib.request.urlopen(req) as resp:
+            data = resp.read()
+    except urllib.error.HTTPError as e:
+        if e.code == 304:
+            return 'not modified'
+        raise
+    if os.path.isfile(path):
+        with open(path, 'rb') as fp:
+            if fp.read() == data:
+                return 'unchanged'
+    # write alongside and move into place so a stopped download never leaves half a file
+    with open(path + '.part', 'wb') as fp:
+        fp.write(data)
+    os.replace(path + '.part', path)
+    return 'updated'
+
+wanted = set()
 for port in ports:
     for year in years:
-        print("Downloading ",port,year)
         port_encoded = urllib.parse.quote(port)
         url = f'https://static.charts.linz.govt.nz/tide-tables/maj-ports/csv/{port_encoded}%20{year}.csv'
-        resp = urllib.request.urlopen(url)
-        with open(os.path.join(csv_dir, f'{port}_{year}.csv'), 'wb') as fp:
-            fp.write(resp.read())
+        name = f'{port}_{year}.csv'
+        wanted.add(name)
+        print("Downloading ", port, year, fetch(url, os.path.join(csv_dir, name)))
+
+for f in glob.glob(os.path.join(csv_dir, '*.csv')):
+    if os.path.basename(f) not in wanted:
+        print("Removing ", f)
+        os.remove(f)
 
 print('-------------------------------------------------------------------------------')
 print('here is a Java variable declaration for portdisplaynames using the current ports list. This makes it easy to copy the array directly into NZTides.java')